@@ -0,0 +1,185 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * Banned classes, ignored classes and jars used by the benchmarks. The jars are copied to
+ * <code>target/fixtures</code> by the build, another directory can be given with the
+ * <code>banClassUsage.fixtures</code> system property.
+ */
+public final class BenchmarkFixtures
+{
+	/**
+	 * A ban list like the ones used for Jakarta EE applications: legacy APIs, logging bridges
+	 * and classes that have a better replacement.
+	 */
+	public static final List<String> BANNED_CLASSES = List.of("javax.ejb.*",
+		"javax.persistence.*", "javax.xml.bind.*", "javax.servlet.*", "javax.inject.*",
+		"org.apache.commons.logging.*", "org.apache.log4j.*", "org.joda.time.*",
+		"sun.misc.Unsafe", "sun.reflect.*", "java.util.Vector", "java.util.Hashtable",
+		"java.util.Stack", "java.lang.ThreadGroup", "java.util.Observable",
+		"com.google.common.base.Optional", "org.jboss.logging.Logger", "jakarta.xml.bind.*");
+
+	/**
+	 * Ignored classes, both simple wildcards and patterns that need a regular expression.
+	 */
+	public static final List<String> IGNORED_CLASSES = List.of("sun.misc.Unsafe",
+		"javax.inject.Inject", "javax.persistence.Transient", "org.jboss.logging.*",
+		"com.google.*.internal.*", "javax.xml.bind.annotation.Xml?*", "*$Proxy*",
+		"java.util.?ector");
+
+	public static final EnforcerLogger QUIET_LOG = new QuietLog();
+
+	private BenchmarkFixtures()
+	{
+	}
+
+	/**
+	 * The ignored classes as {@link ClassIgnoreMatcher} expects them, as internal names.
+	 */
+	public static List<String> getInternalIgnores()
+	{
+		List<String> ret = new ArrayList<>();
+		for (String ignore : IGNORED_CLASSES)
+		{
+			ret.add(ignore.replace('.', '/'));
+		}
+		return ret;
+	}
+
+	public static File getJar(String name)
+	{
+		File ret = new File(System.getProperty("banClassUsage.fixtures", "target/fixtures"),
+			name + ".jar");
+		if (!ret.isFile())
+			throw new IllegalStateException(ret + " not found, run mvn package first");
+		return ret;
+	}
+
+	public static List<File> getJars()
+	{
+		return Arrays.asList(getJar("guava"), getJar("jackson-databind"),
+			getJar("hibernate-core"));
+	}
+
+	/**
+	 * Returns the contents of all class files in the jars.
+	 */
+	public static List<byte[]> readClassFiles(List<File> jars) throws IOException
+	{
+		List<byte[]> ret = new ArrayList<>();
+		for (File jar : jars)
+		{
+			try (JarReader jarFile = new JarReader(jar))
+			{
+				jarFile.forEachEntry(entry -> {
+					if (entry.isClass())
+						ret.add(Arrays.copyOf(entry.read(), (int) entry.getSize()));
+				});
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the internal names of all classes referenced by the jars, the input of the
+	 * matchers in a real run.
+	 */
+	public static List<String> readReferencedClasses(List<File> jars) throws IOException
+	{
+		Set<String> ret = new TreeSet<>();
+		for (File jar : jars)
+		{
+			ret.addAll(new ArchiveScanner(ScanEngine.ASM, ScanDepth.FULL, null, null, "",
+				new HashMap<>(), QUIET_LOG).scan(jar));
+		}
+		return new ArrayList<>(ret);
+	}
+
+	private static class QuietLog implements EnforcerLogger
+	{
+		@Override
+		public void warnOrError(CharSequence message)
+		{
+		}
+
+		@Override
+		public void warnOrError(Supplier<CharSequence> messageSupplier)
+		{
+		}
+
+		@Override
+		public boolean isDebugEnabled()
+		{
+			return false;
+		}
+
+		@Override
+		public void debug(CharSequence message)
+		{
+		}
+
+		@Override
+		public void debug(Supplier<CharSequence> messageSupplier)
+		{
+		}
+
+		@Override
+		public boolean isInfoEnabled()
+		{
+			return false;
+		}
+
+		@Override
+		public void info(CharSequence message)
+		{
+		}
+
+		@Override
+		public void info(Supplier<CharSequence> messageSupplier)
+		{
+		}
+
+		@Override
+		public boolean isWarnEnabled()
+		{
+			return false;
+		}
+
+		@Override
+		public void warn(CharSequence message)
+		{
+		}
+
+		@Override
+		public void warn(Supplier<CharSequence> messageSupplier)
+		{
+		}
+
+		@Override
+		public boolean isErrorEnabled()
+		{
+			return false;
+		}
+
+		@Override
+		public void error(CharSequence message)
+		{
+		}
+
+		@Override
+		public void error(Supplier<CharSequence> messageSupplier)
+		{
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Collecting the referenced classes of every class file in the fixture jars, with a reused
+ * collector as in a real scan. The class files are read up front, so only parsing is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectorBenchmark
+{
+	@Param({"ASM", "CONSTANT_POOL"})
+	public ScanEngine engine;
+
+	@Param({"FULL", "API"})
+	public ScanDepth depth;
+
+	private List<byte[]> classFiles;
+
+	private IntSet ids;
+
+	private ScanEngine.Collector collector;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		classFiles = BenchmarkFixtures.readClassFiles(BenchmarkFixtures.getJars());
+		ids = new IntSet();
+		collector = engine.newCollector(new SymbolTable(), ids, depth);
+	}
+
+	@Benchmark
+	public int collect()
+	{
+		int ret = 0;
+		for (byte[] classFile : classFiles)
+		{
+			ids.clear();
+			collector.collect(classFile, 0, classFile.length);
+			ret += ids.size();
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,122 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Matching the classes referenced by the fixture jars against the banned and ignored classes,
+ * as <code>isBanned</code> does for every referenced class, and compiling the ignore patterns.
+ * The ignore patterns are also matched one by one as regular expressions made by
+ * {@link BanClassUsage#asRegex(String)}, to compare with {@link ClassIgnoreMatcher}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark
+{
+	private List<String> referencedClasses;
+
+	private ClassNameMatcher bannedClassMatcher;
+
+	private ClassIgnoreMatcher ignoreMatcher;
+
+	private List<Pattern> ignorePatterns;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		referencedClasses = BenchmarkFixtures.readReferencedClasses(BenchmarkFixtures.getJars());
+		bannedClassMatcher = new ClassNameMatcher(BenchmarkFixtures.BANNED_CLASSES);
+		ignoreMatcher = new ClassIgnoreMatcher(BenchmarkFixtures.getInternalIgnores());
+		ignorePatterns = compileAsRegex();
+	}
+
+	@Benchmark
+	public int isBanned()
+	{
+		int ret = 0;
+		for (String referencedClass : referencedClasses)
+		{
+			if (bannedClassMatcher.matches(referencedClass)
+				&& !ignoreMatcher.isIgnored(referencedClass))
+				ret++;
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public int bannedClassMatcher()
+	{
+		int ret = 0;
+		for (String referencedClass : referencedClasses)
+		{
+			if (bannedClassMatcher.matches(referencedClass))
+				ret++;
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public int isIgnored()
+	{
+		int ret = 0;
+		for (String referencedClass : referencedClasses)
+		{
+			if (ignoreMatcher.isIgnored(referencedClass))
+				ret++;
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public int isIgnoredAsRegex()
+	{
+		int ret = 0;
+		for (String referencedClass : referencedClasses)
+		{
+			for (Pattern pattern : ignorePatterns)
+			{
+				if (pattern.matcher(referencedClass).matches())
+				{
+					ret++;
+					break;
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Benchmark
+	public ClassIgnoreMatcher compileIgnoreMatcher()
+	{
+		return new ClassIgnoreMatcher(BenchmarkFixtures.getInternalIgnores());
+	}
+
+	@Benchmark
+	public List<Pattern> compileAsRegex()
+	{
+		List<Pattern> ret = new ArrayList<>();
+		for (String ignore : BenchmarkFixtures.getInternalIgnores())
+		{
+			ret.add(Pattern.compile(BanClassUsage.asRegex(ignore)));
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,76 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Finding the banned classes in a jar from start to end, the way <code>getBannedClasses</code>
+ * does when no result is cached: reading and scanning the jar, and matching the referenced
+ * classes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark
+{
+	@Param({"guava", "jackson-databind", "hibernate-core"})
+	public String jar;
+
+	@Param({"ASM", "CONSTANT_POOL"})
+	public ScanEngine engine;
+
+	@Param({"true", "false"})
+	public boolean prefilter;
+
+	private File file;
+
+	private ClassBytesPrefilter classBytesPrefilter;
+
+	private ClassNameMatcher bannedClassMatcher;
+
+	private ClassIgnoreMatcher ignoreMatcher;
+
+	@Setup
+	public void setup()
+	{
+		file = BenchmarkFixtures.getJar(jar);
+		classBytesPrefilter =
+			prefilter ? new ClassBytesPrefilter(BenchmarkFixtures.BANNED_CLASSES) : null;
+		bannedClassMatcher = new ClassNameMatcher(BenchmarkFixtures.BANNED_CLASSES);
+		ignoreMatcher = new ClassIgnoreMatcher(BenchmarkFixtures.getInternalIgnores());
+	}
+
+	@Benchmark
+	public Set<String> getBannedClasses() throws IOException
+	{
+		ArchiveScanner scanner = new ArchiveScanner(engine, ScanDepth.FULL, classBytesPrefilter,
+			null, "", new HashMap<>(), BenchmarkFixtures.QUIET_LOG);
+		Set<String> ret = new TreeSet<>();
+		for (String referencedClass : scanner.scan(file))
+		{
+			if (bannedClassMatcher.matches(referencedClass)
+				&& !ignoreMatcher.isIgnored(referencedClass))
+				ret.add(referencedClass.replace('/', '.'));
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,353 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * Collects the classes referenced by the class files in an archive. Archives nested in the
+ * archive, such as the jars in <code>WEB-INF/lib</code> of a war, <code>BOOT-INF/lib</code> of a
+ * Spring Boot jar or the modules of an ear, are scanned as well, straight from the outer archive.
+ * The results of nested archives are shared by all scans in the build, keyed by the name, size and
+ * CRC of the entry, so a library that is in several archives is only scanned once.
+ * <p>
+ * When a target release is set, only the class files a JVM of that release would load from a
+ * multi-release jar are scanned: the highest version in <code>META-INF/versions</code> that is not
+ * newer than the target release, or otherwise the base version. Like the JVM, a jar is only a
+ * multi-release jar when its manifest has <code>Multi-Release: true</code>, otherwise the entries
+ * in <code>META-INF/versions</code> are plain resources and are not scanned.
+ */
+public class ArchiveScanner
+{
+	private static final String VERSIONS = "META-INF/versions/";
+
+	private static final String MANIFEST = "META-INF/MANIFEST.MF";
+
+	private final ScanEngine engine;
+
+	private final ScanDepth depth;
+
+	private final ClassBytesPrefilter prefilter;
+
+	private final Integer targetRelease;
+
+	private final String configurationKey;
+
+	private final Map<String, Set<String>> nestedResults;
+
+	private final EnforcerLogger log;
+
+	private final AtomicLong classesParsed = new AtomicLong();
+
+	private final AtomicLong classesSkipped = new AtomicLong();
+
+	private final AtomicLong classesReused = new AtomicLong();
+
+	private final AtomicInteger nestedScanned = new AtomicInteger();
+
+	private final AtomicInteger nestedReused = new AtomicInteger();
+
+	private FailFast failFast;
+
+	private Predicate<String> isViolation;
+
+	private ClassResults classResults;
+
+	/**
+	 * @param prefilter
+	 *            skips class files that cannot reference a banned class, may be null
+	 * @param targetRelease
+	 *            the release to scan multi-release jars for, or null to scan all versions
+	 * @param configurationKey
+	 *            identifies everything besides the archive the results depend on
+	 * @param nestedResults
+	 *            results of nested archives, shared between scans with the same configuration
+	 */
+	public ArchiveScanner(ScanEngine engine, ScanDepth depth, ClassBytesPrefilter prefilter,
+			Integer targetRelease, String configurationKey,
+			Map<String, Set<String>> nestedResults, EnforcerLogger log)
+	{
+		this.engine = engine;
+		this.depth = depth;
+		this.prefilter = prefilter;
+		this.targetRelease = targetRelease;
+		this.configurationKey = configurationKey;
+		this.nestedResults = nestedResults;
+		this.log = log;
+	}
+
+	/**
+	 * Counts the referenced classes for which the predicate holds as violations, and stops the
+	 * scan with a {@link ScanStoppedException} once enough violations have been found.
+	 */
+	public void setFailFast(FailFast failFast, Predicate<String> isViolation)
+	{
+		this.failFast = failFast;
+		this.isViolation = isViolation;
+	}
+
+	/**
+	 * Reuses the results of byte-identical class files scanned with the same configuration.
+	 */
+	public void setClassResults(ClassResults classResults)
+	{
+		this.classResults = classResults;
+	}
+
+	/**
+	 * Returns the internal names of the classes referenced by the archive and the archives nested
+	 * in it.
+	 */
+	public Set<String> scan(File file) throws IOException
+	{
+		try (JarReader jarFile = new JarReader(file))
+		{
+			return scan(jarFile);
+		}
+	}
+
+	private Set<String> scan(JarReader jarFile) throws IOException
+	{
+		// Names are interned per archive, so every name is only allocated once
+		SymbolTable symbols = new SymbolTable();
+		IntSet classDeps = new IntSet();
+		IntSet jarDeps = new IntSet(1024);
+		ScanEngine.Collector collector = engine.newCollector(symbols, classDeps, depth);
+		Map<String, Integer> releases = targetRelease == null ? null : getReleases(jarFile);
+		Set<String> nestedDeps = new HashSet<>();
+		log.debug("Scanning " + jarFile.getPath());
+		try
+		{
+			jarFile.forEachEntry(entry -> {
+				if (failFast != null && failFast.isStopped())
+					throw new ScanStoppedException(Set.of());
+				if (entry.isDirectory())
+					return;
+				if (entry.nameEndsWith(".jar") || entry.nameEndsWith(".war"))
+				{
+					nestedDeps.addAll(scanNested(entry));
+					return;
+				}
+				if (!entry.isClass() || releases != null && !isSelected(entry, releases))
+					return;
+				try
+				{
+					classDeps.clear();
+					String name = classResults == null ? null : entry.getName();
+					String[] reused = name == null ? null
+						: classResults.get(entry.getCrc(), entry.getSize(), name);
+					if (reused != null)
+					{
+						classesReused.incrementAndGet();
+						for (String className : reused)
+						{
+							classDeps.add(symbols.intern(className));
+						}
+					}
+					else if (!collect(entry, collector))
+					{
+						classesSkipped.incrementAndGet();
+					}
+					if (name != null && reused == null)
+						classResults.put(entry.getCrc(), entry.getSize(), name, classDeps, symbols);
+					if (isViolation == null)
+						jarDeps.addAll(classDeps);
+					else
+						addCountingViolations(symbols, classDeps, jarDeps);
+				}
+				catch (Exception e)
+				{
+					log.warn("Skipping " + entry.getName() + " due to " + e.getMessage());
+				}
+			});
+		}
+		catch (ScanStoppedException e)
+		{
+			// Pass on what was found so far, including the part of the nested archive
+			Set<String> found = getNames(symbols, jarDeps, nestedDeps);
+			found.addAll(e.getReferencedClasses());
+			throw new ScanStoppedException(found);
+		}
+		return getNames(symbols, jarDeps, nestedDeps);
+	}
+
+	/**
+	 * Collects the classes referenced by the class file, unless the prefilter skips it.
+	 *
+	 * @return whether the class file was parsed
+	 */
+	private boolean collect(JarReader.Entry entry, ScanEngine.Collector collector)
+			throws IOException
+	{
+		byte[] classFile = entry.read();
+		int length = (int) entry.getSize();
+		if (prefilter != null && !prefilter.mayReferenceBanned(classFile, 0, length))
+			return false;
+		if (log.isDebugEnabled())
+			log.debug("Checking " + entry.getName());
+		classesParsed.incrementAndGet();
+		collector.collect(classFile, 0, length);
+		return true;
+	}
+
+	private void addCountingViolations(SymbolTable symbols, IntSet classDeps, IntSet jarDeps)
+	{
+		for (int index = 0; index < classDeps.size(); index++)
+		{
+			int id = classDeps.get(index);
+			// Each class is only counted the first time the archive references it
+			if (jarDeps.add(id) && isViolation.test(symbols.getName(id)))
+				failFast.addViolations(1);
+		}
+	}
+
+	private static Set<String> getNames(SymbolTable symbols, IntSet jarDeps,
+			Set<String> nestedDeps)
+	{
+		Set<String> ret = new HashSet<>((jarDeps.size() + nestedDeps.size()) * 2);
+		jarDeps.forEach(id -> ret.add(symbols.getName(id)));
+		ret.addAll(nestedDeps);
+		return ret;
+	}
+
+	private Set<String> scanNested(JarReader.Entry entry)
+	{
+		String name = entry.getName();
+		String key = name.substring(name.lastIndexOf('/') + 1) + ":" + entry.getSize() + ":"
+			+ Long.toHexString(entry.getCrc()) + ":" + configurationKey;
+		Set<String> ret = nestedResults.get(key);
+		if (ret != null)
+		{
+			nestedReused.incrementAndGet();
+			if (isViolation != null)
+				failFast.addViolations((int) ret.stream().filter(isViolation).count());
+			return ret;
+		}
+		try (JarReader nested = entry.openArchive())
+		{
+			ret = scan(nested);
+			nestedScanned.incrementAndGet();
+			nestedResults.put(key, ret);
+			return ret;
+		}
+		catch (ScanStoppedException e)
+		{
+			throw e;
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Skipping nested archive " + name + " due to " + e.getMessage());
+			return Set.of();
+		}
+	}
+
+	/**
+	 * Returns the version to scan for each class file that has a version in
+	 * <code>META-INF/versions</code> that is not newer than the target release, none when the
+	 * archive is not a multi-release jar.
+	 */
+	private Map<String, Integer> getReleases(JarReader jarFile) throws IOException
+	{
+		Map<String, Integer> ret = new HashMap<>();
+		boolean[] multiRelease = new boolean[1];
+		jarFile.forEachEntry(entry -> {
+			if (entry.nameStartsWith(MANIFEST) && entry.getName().equals(MANIFEST))
+				multiRelease[0] = isMultiRelease(jarFile, entry);
+			else if (entry.isClass() && entry.nameStartsWith(VERSIONS))
+			{
+				String name = entry.getName();
+				int slash = name.indexOf('/', VERSIONS.length());
+				int version = parseVersion(name, slash);
+				if (version > 0 && version <= targetRelease)
+					ret.merge(name.substring(slash + 1), version, Math::max);
+			}
+		});
+		if (!multiRelease[0])
+			ret.clear();
+		return ret;
+	}
+
+	private boolean isMultiRelease(JarReader jarFile, JarReader.Entry manifest)
+	{
+		try
+		{
+			Manifest parsed = new Manifest(
+				new ByteArrayInputStream(manifest.read(), 0, (int) manifest.getSize()));
+			return "true".equalsIgnoreCase(
+				parsed.getMainAttributes().getValue(Attributes.Name.MULTI_RELEASE));
+		}
+		catch (IOException e)
+		{
+			log.warn("Scanning " + jarFile.getPath()
+				+ " as a plain jar, its manifest cannot be read due to " + e.getMessage());
+			return false;
+		}
+	}
+
+	private boolean isSelected(JarReader.Entry entry, Map<String, Integer> releases)
+	{
+		if (!entry.nameStartsWith(VERSIONS))
+			return releases.isEmpty() || !releases.containsKey(entry.getName());
+		String name = entry.getName();
+		int slash = name.indexOf('/', VERSIONS.length());
+		Integer selected = releases.get(name.substring(slash + 1));
+		return selected != null && selected == parseVersion(name, slash);
+	}
+
+	private static int parseVersion(String name, int slash)
+	{
+		try
+		{
+			return slash < 0 ? -1 : Integer.parseInt(name.substring(VERSIONS.length(), slash));
+		}
+		catch (NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+
+	public long getClassesParsed()
+	{
+		return classesParsed.get();
+	}
+
+	public long getClassesSkipped()
+	{
+		return classesSkipped.get();
+	}
+
+	/**
+	 * @return the number of class files whose result was reused from an identical class file
+	 */
+	public long getClassesReused()
+	{
+		return classesReused.get();
+	}
+
+	/**
+	 * @return the number of nested archives that were scanned
+	 */
+	public int getNestedScanned()
+	{
+		return nestedScanned.get();
+	}
+
+	/**
+	 * @return the number of nested archives whose results were reused from an earlier scan
+	 */
+	public int getNestedReused()
+	{
+		return nestedReused.get();
+	}
+}
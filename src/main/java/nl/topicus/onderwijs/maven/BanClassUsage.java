@@ -2,16 +2,30 @@ package nl.topicus.onderwijs.maven;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -19,47 +33,255 @@ import javax.inject.Named;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.maven.RepositoryUtils;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.enforcer.rule.api.AbstractEnforcerRule;
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
 import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuildingRequest;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilder;
 import org.apache.maven.shared.dependency.graph.DependencyGraphBuilderException;
 import org.apache.maven.shared.dependency.graph.DependencyNode;
+import org.eclipse.aether.DefaultRepositorySystemSession;
 import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
-import org.objectweb.asm.ClassReader;
+import org.eclipse.aether.util.listener.ChainedRepositoryListener;
+import nl.topicus.onderwijs.maven.IgnoreRules.IgnorableDependency;
 
 @Named("banClassUsage")
 public class BanClassUsage extends AbstractEnforcerRule
 {
+	private static final long DEFAULT_MAX_INFLIGHT_BYTES = 256L * 1024 * 1024;
+
+	private static final long DEFAULT_CACHE_MAX_SIZE = 512L * 1024 * 1024;
+
+	private static final int DEFAULT_SLOWEST_ARTIFACTS = 10;
+
+	private static final int DEFAULT_SUMMARY_LINES = 100;
+
+	private static final Set<String> KNOWN_SCOPES = Set.of(Artifact.SCOPE_COMPILE,
+		Artifact.SCOPE_RUNTIME, Artifact.SCOPE_PROVIDED, Artifact.SCOPE_TEST, Artifact.SCOPE_SYSTEM,
+		Artifact.SCOPE_IMPORT);
+
+	/**
+	 * Compiled ignore rules per dependency configuration, shared by all executions in the build.
+	 */
+	private static final Map<String, IgnoreRules> IGNORE_RULES = new ConcurrentHashMap<>();
+
 	private List<String> bannedClasses;
 
 	private List<Dependency> dependencies;
 
 	private List<String> scopes;
 
+	/**
+	 * Number of threads used to scan artifacts. Either a number or "auto" to use one thread per
+	 * available processor. Defaults to scanning on the calling thread.
+	 */
+	private String threads;
+
+	/**
+	 * Upper bound on the total size of the jars that are being read at the same time when
+	 * scanning in parallel.
+	 */
+	private long maxInflightBytes = DEFAULT_MAX_INFLIGHT_BYTES;
+
+	/**
+	 * Directory for the persistent cache of the classes referenced by each jar. The cache is not
+	 * used when no directory is configured.
+	 */
+	private File cacheDirectory;
+
+	/**
+	 * Maximum size of the persistent cache in bytes. The least recently used entries are removed
+	 * when the cache grows beyond this size.
+	 */
+	private long cacheMaxSize = DEFAULT_CACHE_MAX_SIZE;
+
+	/**
+	 * How the classes referenced by a class file are collected, either ASM (the default) or
+	 * CONSTANT_POOL.
+	 */
+	private ScanEngine engine = ScanEngine.ASM;
+
+	/**
+	 * Which parts of the classes are scanned, either FULL (the default) or API to skip the method
+	 * bodies. Can be overridden per dependency.
+	 */
+	private ScanDepth scanDepth = ScanDepth.FULL;
+
+	/**
+	 * Skip parsing class files whose bytes do not contain the name of any banned class. The
+	 * prefilter is not used together with the persistent cache, which needs all references.
+	 */
+	private boolean prefilter = true;
+
+	/**
+	 * Only scan the artifacts that changed since the previous run, reusing the stored verdicts of
+	 * the other artifacts. The state is kept in the build directory and discarded when the
+	 * configuration changes.
+	 */
+	private boolean incremental;
+
+	/**
+	 * Also check the classes in the output directory of the project. Bind the execution to a phase
+	 * after compile to check the classes of the current build.
+	 */
+	private boolean checkProjectClasses;
+
+	/**
+	 * Only scan the classes of multi-release jars that a JVM of this release would load, instead
+	 * of every version in <code>META-INF/versions</code>.
+	 */
+	private Integer targetRelease;
+
+	/**
+	 * Time budget of the rule in milliseconds. When the rule takes longer, the slowest artifacts
+	 * are logged. The timings of every run are written to
+	 * <code>target/ban-class-usage-report.json</code>.
+	 */
+	private long timeBudget;
+
+	/**
+	 * Number of artifacts logged when the time budget is exceeded.
+	 */
+	private int slowestArtifacts = DEFAULT_SLOWEST_ARTIFACTS;
+
+	/**
+	 * Stop checking once this many banned classes have been found, cancelling the scans that are
+	 * still running. The artifacts that used banned classes in the previous run are checked
+	 * first. Defaults to 0, which checks all artifacts.
+	 */
+	private int maxViolations;
+
+	/**
+	 * An index of the local repository, built with {@link RepositoryIndex}. The jars that did not
+	 * change since the index was updated are checked against the index instead of being scanned,
+	 * unless they are scanned with the API depth or for a target release.
+	 */
+	private File repositoryIndex;
+
+	/**
+	 * Only check the classes that are reachable from the classes in the output directory of the
+	 * project, parsing the classes of the dependencies as they are reached instead of every class
+	 * in every dependency. Violations are reported with the chain of classes that reaches them.
+	 * Checks all classes when the project has not been compiled.
+	 */
+	private boolean reachability;
+
+	/**
+	 * Maximum number of lines with banned classes in the error message, which groups them per
+	 * artifact and package. All banned classes are written to
+	 * <code>target/ban-class-usage-violations.json</code> and
+	 * <code>target/ban-class-usage.sarif</code>.
+	 */
+	private int summaryLines = DEFAULT_SUMMARY_LINES;
+
+	/**
+	 * Write the timings of the rule to <code>target/ban-class-usage-report.json</code>, and all
+	 * banned classes to <code>target/ban-class-usage-violations.json</code> and
+	 * <code>target/ban-class-usage.sarif</code> when banned classes are found. Enabled by
+	 * default, set to false to only report the banned classes in the error message.
+	 */
+	private boolean writeReports = true;
+
+	/**
+	 * The group ids, optionally with wildcards, of the dependencies that may have a
+	 * <code>classrefs</code> artifact attached by {@link PublishClassReferences}. When it can be
+	 * resolved, it is used instead of scanning the jar, unless the jar is scanned with the API
+	 * depth or for a target release, or the file was not written for the resolved jar.
+	 * Dependencies with a classifier are always scanned.
+	 */
+	private List<String> classReferenceGroups;
+
+	private ClassReferenceCache cache;
+
+	private ClassUsageScanner classUsageScanner;
+
+	private final AtomicLong classesParsed = new AtomicLong();
+
+	private final AtomicLong classesSkipped = new AtomicLong();
+
+	private final AtomicLong classesReused = new AtomicLong();
+
+	private final AtomicLong nestedArchivesScanned = new AtomicLong();
+
+	private final AtomicLong nestedArchivesReused = new AtomicLong();
+
+	private final AtomicLong classFilesScanned = new AtomicLong();
+
+	private final AtomicLong classFilesReused = new AtomicLong();
+
+	private ScanMetrics metrics;
+
+	private RepositoryIndex indexedRepository;
+
+	/**
+	 * The banned classes referenced by each jar in {@link #indexedRepository}.
+	 */
+	private Map<Integer, Set<String>> indexedReferences;
+
+	private FailFast failFast;
+
+	/**
+	 * The artifacts whose scan was stopped by {@link #failFast}, their banned classes are
+	 * incomplete.
+	 */
+	private final Set<Artifact> partiallyChecked = ConcurrentHashMap.newKeySet();
+
+	private long startNanos;
+
+	private ViolationReport violationReport;
+
+	/**
+	 * The threads artifacts are scanned on, null when scanning on the calling thread.
+	 */
+	private ExecutorService executor;
+
+	private int executorThreads;
+
+	private InflightBytes inflightBytes;
+
+	/**
+	 * The number of banned classes found in each checked artifact.
+	 */
+	private final Map<Artifact, Integer> violationCounts = new ConcurrentHashMap<>();
+
+	private IncrementalState incrementalState;
+
+	/**
+	 * The resolved <code>classrefs</code> file of each artifact that has one.
+	 */
+	private final Map<Artifact, File> classReferenceFiles = new HashMap<>();
+
 	private MavenSession session;
 
 	private RepositorySystem repositorySystem;
 
 	private DependencyGraphBuilder graphBuilder;
 
+	private SessionScanResults scanResults;
+
 	@Inject
 	public BanClassUsage(MavenSession session, RepositorySystem repositorySystem,
-			DependencyGraphBuilder graphBuilder)
+			DependencyGraphBuilder graphBuilder, SessionScanResults scanResults)
 	{
 		this.session = session;
 		this.repositorySystem = repositorySystem;
 		this.graphBuilder = graphBuilder;
+		this.scanResults = scanResults;
 	}
 
 	@Override
 	public void execute() throws EnforcerRuleException
 	{
+		metrics = new ScanMetrics();
+		startNanos = System.nanoTime();
 
 		ProjectBuildingRequest buildingRequest =
 			new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
@@ -84,51 +306,564 @@ public class BanClassUsage extends AbstractEnforcerRule
 		return dependencies;
 	}
 
-	private Set<Artifact> getAllDescendants(DependencyNode node)
+	private Set<Artifact> getAllDescendants(DependencyNode root)
 	{
-		Set<Artifact> children = null;
-		if (node.getChildren() != null)
+		IgnoreRules ignoreRules = getIgnoreRules();
+		List<Artifact> descendants = new ArrayList<>();
+		for (Artifact artifact : getDescendants(root, scopes, getLog()))
 		{
-			children = new HashSet<>();
-			for (DependencyNode depNode : node.getChildren())
+			if (!reachability && ignoreRules.forArtifact(artifact).ignoresAll())
 			{
-				try
-				{
-					Artifact artifact = depNode.getArtifact();
-					resolveArtifact(artifact);
-					children.add(artifact);
+				// Reachability needs every class path entry to follow references through
+				getLog().debug("Not resolving " + artifact + ", all its classes are ignored");
+			}
+			else
+			{
+				descendants.add(artifact);
+			}
+		}
+		return resolveArtifacts(descendants);
+	}
+
+	/**
+	 * Returns the dependencies in the tree with one of the scopes, or all dependencies when the
+	 * scopes are null, in the order of the class path: depth first, in the order they are
+	 * declared. The dependencies of an artifact are only skipped when none of them can have one
+	 * of the scopes.
+	 */
+	static List<Artifact> getDescendants(DependencyNode root, List<String> scopes,
+			EnforcerLogger log)
+	{
+		// Every artifact is visited once, shared dependencies are not walked again
+		Set<String> visited = new HashSet<>();
+		List<Artifact> ret = new ArrayList<>();
+		Deque<DependencyNode> stack = new ArrayDeque<>();
+		pushChildren(stack, root);
+		while (!stack.isEmpty())
+		{
+			DependencyNode node = stack.pop();
+			Artifact artifact = node.getArtifact();
+			if (!visited.add(artifact.getId()))
+				continue;
+			if (scopes == null || scopes.contains(artifact.getScope()))
+			{
+				ret.add(artifact);
+			}
+			else if (!canHaveScope(artifact.getScope(), scopes))
+			{
+				log.debug("Pruning " + artifact + " and its dependencies, scope "
+					+ artifact.getScope() + " is not checked");
+				continue;
+			}
+			pushChildren(stack, node);
+		}
+		return ret;
+	}
 
-					Set<Artifact> subNodes = getAllDescendants(depNode);
+	private static void pushChildren(Deque<DependencyNode> stack, DependencyNode node)
+	{
+		List<DependencyNode> children = node.getChildren();
+		if (children == null)
+			return;
+		// Pushed in reverse, so the first child is walked first
+		for (int index = children.size() - 1; index >= 0; index--)
+		{
+			stack.push(children.get(index));
+		}
+	}
 
-					if (subNodes != null)
-					{
-						children.addAll(subNodes);
-					}
+	/**
+	 * Returns whether the dependencies of an artifact with the scope can have one of the scopes.
+	 * The dependencies of a compile dependency have the compile or the runtime scope, the
+	 * dependencies of a dependency with another known scope have the same scope.
+	 */
+	static boolean canHaveScope(String scope, List<String> scopes)
+	{
+		if (Artifact.SCOPE_COMPILE.equals(scope))
+			return scopes.contains(Artifact.SCOPE_COMPILE)
+				|| scopes.contains(Artifact.SCOPE_RUNTIME);
+		if (scope != null && KNOWN_SCOPES.contains(scope))
+			return scopes.contains(scope);
+		return true;
+	}
+
+	private Set<Artifact> resolveArtifacts(List<Artifact> artifacts)
+	{
+		List<ArtifactRequest> requests = new ArrayList<>();
+		for (Artifact artifact : artifacts)
+		{
+			ArtifactRequest request = new ArtifactRequest();
+			request.setRepositories(session.getCurrentProject().getRemoteProjectRepositories());
+			request.setArtifact(RepositoryUtils.toArtifact(artifact));
+			requests.add(request);
+		}
+
+		// Time the resolution of each artifact, without changing the session of the build
+		DefaultRepositorySystemSession repositorySession =
+			new DefaultRepositorySystemSession(session.getRepositorySession());
+		repositorySession.setRepositoryListener(ChainedRepositoryListener.newInstance(
+			repositorySession.getRepositoryListener(), metrics.getResolutionListener()));
+		long start = System.nanoTime();
+		List<ArtifactResult> results;
+		try
+		{
+			results = repositorySystem.resolveArtifacts(repositorySession, requests);
+		}
+		catch (ArtifactResolutionException e)
+		{
+			// Contains the results of all requests, including the ones that did resolve
+			results = e.getResults();
+		}
+		metrics.setTotalResolutionNanos(System.nanoTime() - start);
+
+		// Keeps the order of the class path, which the reachability check depends on
+		Set<Artifact> ret = new LinkedHashSet<>();
+		for (int index = 0; index < artifacts.size(); index++)
+		{
+			Artifact artifact = artifacts.get(index);
+			ArtifactResult artifactResult = results.get(index);
+			if (artifactResult.isResolved())
+			{
+				artifact.setFile(artifactResult.getArtifact().getFile());
+				artifact.setVersion(artifactResult.getArtifact().getVersion());
+				artifact.setResolved(true);
+				ret.add(artifact);
+				metrics.forArtifact(artifact)
+					.setResolutionNanos(metrics.getResolutionNanos(artifact));
+			}
+			else
+			{
+				getLog().warn(
+					new ArtifactResolutionException(Collections.singletonList(artifactResult))
+						.getMessage());
+			}
+		}
+		return ret;
+	}
+
+	protected void handleArtifacts(Set<Artifact> artifacts) throws EnforcerRuleException
+	{
+		IgnoreRules ignoreRules = getIgnoreRules();
+		if (metrics == null)
+		{
+			metrics = new ScanMetrics();
+			startNanos = System.nanoTime();
+		}
+
+		if (cacheDirectory != null)
+		{
+			getLog().debug("Using class reference cache in " + cacheDirectory);
+			cache = new ClassReferenceCache(cacheDirectory.toPath(), cacheMaxSize);
+		}
+		// The cached references are reused with other banned classes, so they must be complete
+		classUsageScanner = new ClassUsageScanner(bannedClasses, engine, targetRelease,
+			cache == null && prefilter, scanResults, getLog());
+		if (repositoryIndex != null)
+		{
+			loadRepositoryIndex();
+		}
+
+		StopWatch sw = new StopWatch();
+		sw.start();
+		Artifact reachabilityRoot = null;
+		if (reachability)
+		{
+			reachabilityRoot = getProjectClasses();
+			if (reachabilityRoot == null)
+				getLog().warn("The project has not been compiled, checking all classes instead of "
+					+ "the classes reachable from the project");
+		}
+		List<Artifact> toCheck = new ArrayList<>();
+		for (Artifact artifact : artifacts)
+		{
+			if (scopes != null && !scopes.contains(artifact.getScope()))
+			{
+				getLog().debug("Skipping " + artifact + " due to scope");
+				continue;
+			}
+			if (reachabilityRoot == null && ignoreRules.forArtifact(artifact).ignoresAll())
+			{
+				getLog().debug("Skipping " + artifact + " because all its classes are ignored");
+				continue;
+			}
+			toCheck.add(artifact);
+		}
+		if (checkProjectClasses && reachabilityRoot == null)
+		{
+			Artifact projectClasses = getProjectClasses();
+			if (projectClasses != null && !ignoreRules.forArtifact(projectClasses).ignoresAll())
+				toCheck.add(projectClasses);
+		}
+		// A class in several entries is taken from the first entry on the class path
+		List<Artifact> classPath = new ArrayList<>(toCheck);
+		// Start with the largest jars, so they do not end up as stragglers at the end of the run
+		toCheck.sort(Comparator.comparingLong(BanClassUsage::getFileSize).reversed());
+		// The history is only needed to order the artifacts when the check stops early
+		ViolationHistory history = null;
+		if (maxViolations > 0)
+		{
+			failFast = new FailFast(maxViolations);
+			history = loadViolationHistory();
+			if (history != null)
+			{
+				// The artifacts that used banned classes before are the most likely to fail
+				toCheck.sort(Comparator.comparingInt(history::getViolations).reversed());
+			}
+		}
+
+		// The verdicts of a reachability check depend on the project classes as well
+		incrementalState =
+			incremental && reachabilityRoot == null ? loadIncrementalState() : null;
+		Path buildDirectory = Paths.get(session.getCurrentProject().getBuild().getDirectory());
+		violationReport = writeReports
+			? new ViolationReport(buildDirectory.resolve("ban-class-usage-violations.json"),
+				buildDirectory.resolve("ban-class-usage.sarif"),
+				session.getCurrentProject().getId())
+			: new ViolationReport(null, null, session.getCurrentProject().getId());
+		try
+		{
+			if (reachabilityRoot != null)
+			{
+				scanReachable(reachabilityRoot, classPath, ignoreRules);
+				toCheck.clear();
+			}
+			List<Artifact> toScan = new ArrayList<>();
+			if (classReferenceGroups != null && !classReferenceGroups.isEmpty())
+			{
+				resolveClassReferences(toCheck, ignoreRules);
+			}
+			for (Artifact artifact : toCheck)
+			{
+				Set<String> verdict =
+					incrementalState == null ? null : incrementalState.getVerdict(artifact);
+				if (verdict == null)
+				{
+					toScan.add(artifact);
 				}
-				catch (ArtifactResolutionException e)
+				else
 				{
-					getLog().warn(e.getMessage());
+					addViolations(artifact, verdict);
+					ScanMetrics.ArtifactMetrics artifactMetrics = metrics.forArtifact(artifact);
+					artifactMetrics.setSource("incremental");
+					artifactMetrics.setMatches(verdict.size());
+					if (failFast != null)
+						failFast.addViolations(verdict.size());
 				}
 			}
+			scanArtifacts(toScan, ignoreRules);
+		}
+		finally
+		{
+			closeViolationReport();
+		}
+		if (incrementalState != null)
+		{
+			saveIncrementalState(toCheck);
+		}
+		if (history != null)
+		{
+			saveViolationHistory(history);
+		}
+
+		StringBuilder error = new StringBuilder();
+		if (violationReport.getViolations() > 0)
+			error.append(violationReport.getSummary(summaryLines));
+		if (failFast != null && failFast.isStopped())
+		{
+			error.append("\n  Stopped after finding " + failFast.getViolations()
+				+ " banned classes, " + Math.max(0, toCheck.size() - violationCounts.size())
+				+ " artifacts were not checked and " + partiallyChecked.size()
+				+ " were checked partially\n");
+		}
+		sw.stop();
+		getLog().debug("BanClassUsage took " + sw.getTime() + "ms");
+		getLog().debug("Parsed " + classesParsed + " classes, the prefilter skipped "
+			+ classesSkipped + " classes");
+		long classFiles = classesParsed.get() + classesSkipped.get() + classesReused.get();
+		getLog().debug("Reused the results of " + classesReused + " identical class files, "
+			+ (classFiles == 0 ? 0 : classesReused.get() * 100 / classFiles)
+			+ "% of the class files in archives");
+		getLog().debug("Scanned " + nestedArchivesScanned + " nested archives, reused "
+			+ nestedArchivesReused + " nested archives");
+		getLog().debug("Scanned " + classFilesScanned + " class files in directories, reused "
+			+ classFilesReused + " unchanged class files");
+		getLog().debug("Artifacts scanned in this build: " + scanResults.getScans()
+			+ ", scans saved by reusing results of other modules: " + scanResults.getReused());
+		if (cache != null)
+		{
+			getLog().debug("Class reference cache: " + cache.getHits() + " hits, "
+				+ cache.getMisses() + " misses");
+			try
+			{
+				cache.evict();
+			}
+			catch (IOException e)
+			{
+				getLog().warn(
+					"Unable to evict entries from " + cacheDirectory + " due to " + e.getMessage());
+			}
+		}
+		reportMetrics();
+		if (error.length() > 0)
+		{
+			throw new EnforcerRuleException(
+				"One or more dependencies use classes that are banned:\n" + error.toString());
+		}
+	}
+
+	/**
+	 * Records the banned classes of an artifact that were found in a previous run.
+	 */
+	private void addViolations(Artifact artifact, Set<String> banned)
+	{
+		for (String className : banned)
+		{
+			violationReport.add(artifact.toString(), artifact.getFile(), className, null);
 		}
-		return children;
+		putVerdict(artifact, banned.size(), banned);
 	}
 
-	private void resolveArtifact(Artifact artifact) throws ArtifactResolutionException
+	/**
+	 * Records the number of banned classes found in a checked artifact, and the banned classes
+	 * themselves when the incremental state is kept.
+	 */
+	private void putVerdict(Artifact artifact, int violations, Set<String> banned)
 	{
-		ArtifactRequest request = new ArtifactRequest();
-		request.setRepositories(session.getCurrentProject().getRemoteProjectRepositories());
-		request.setArtifact(RepositoryUtils.toArtifact(artifact));
+		violationCounts.put(artifact, violations);
+		// The verdict of a stopped scan is incomplete, the previous verdict is kept instead
+		if (incrementalState != null && !partiallyChecked.contains(artifact))
+		{
+			try
+			{
+				incrementalState.putVerdict(artifact, banned);
+			}
+			catch (IOException e)
+			{
+				getLog().warn("Unable to store the verdict of " + artifact + " due to "
+					+ e.getMessage());
+			}
+		}
+	}
 
-		ArtifactResult artifactResult =
-			repositorySystem.resolveArtifact(session.getRepositorySession(), request);
+	private void closeViolationReport()
+	{
+		try
+		{
+			violationReport.close();
+		}
+		catch (IOException e)
+		{
+			getLog().warn("Unable to write the violation reports due to " + e.getMessage());
+		}
+	}
 
-		artifact.setFile(artifactResult.getArtifact().getFile());
-		artifact.setVersion(artifactResult.getArtifact().getVersion());
-		artifact.setResolved(true);
+	/**
+	 * Writes the metrics report unless reports are disabled, and logs the slowest artifacts when
+	 * the time budget is exceeded.
+	 */
+	private void reportMetrics()
+	{
+		long totalNanos = System.nanoTime() - startNanos;
+		if (writeReports)
+		{
+			MavenProject project = session.getCurrentProject();
+			Path reportFile =
+				Paths.get(project.getBuild().getDirectory(), "ban-class-usage-report.json");
+			try
+			{
+				metrics.write(reportFile, project.getId(), totalNanos);
+			}
+			catch (IOException e)
+			{
+				getLog().warn("Unable to write " + reportFile + " due to " + e.getMessage());
+			}
+		}
+		long totalMillis = ScanMetrics.toMillis(totalNanos);
+		if (timeBudget > 0 && totalMillis > timeBudget)
+		{
+			getLog().info("BanClassUsage took " + totalMillis + "ms, more than the budget of "
+				+ timeBudget + "ms. Slowest artifacts:\n"
+				+ metrics.getSlowest(slowestArtifacts)
+					.stream()
+					.map(artifactMetrics -> "  " + artifactMetrics)
+					.collect(Collectors.joining("\n")));
+		}
 	}
 
-	protected void handleArtifacts(Set<Artifact> artifacts) throws EnforcerRuleException
+	/**
+	 * Returns the project artifact with the output directory as its file, or null when the
+	 * project has not been compiled.
+	 */
+	private Artifact getProjectClasses()
+	{
+		MavenProject project = session.getCurrentProject();
+		File outputDirectory = new File(project.getBuild().getOutputDirectory());
+		if (!outputDirectory.isDirectory())
+		{
+			getLog().debug("Not checking the project classes, " + outputDirectory
+				+ " does not exist");
+			return null;
+		}
+		Artifact ret = ArtifactUtils.copyArtifact(project.getArtifact());
+		ret.setFile(outputDirectory);
+		return ret;
+	}
+
+	private IncrementalState loadIncrementalState()
+	{
+		Path stateFile = Paths.get(session.getCurrentProject().getBuild().getDirectory(),
+			"ban-class-usage.state");
+		String configurationHash = Digests.sha1(bannedClasses + "\n" + engine + "\n" + scanDepth
+			+ "\n" + targetRelease + "\n" + IgnoreRules.getConfigurationKey(dependencies));
+		try
+		{
+			return IncrementalState.load(stateFile, configurationHash);
+		}
+		catch (IOException e)
+		{
+			getLog().warn("Unable to read " + stateFile + " due to " + e.getMessage()
+				+ ", checking all artifacts");
+			return null;
+		}
+	}
+
+	private void saveIncrementalState(List<Artifact> checked)
+	{
+		try
+		{
+			for (Artifact artifact : checked)
+			{
+				// The verdicts of the checked artifacts were stored as they were found
+				if (!violationCounts.containsKey(artifact) || partiallyChecked.contains(artifact))
+					incrementalState.retainVerdict(artifact);
+			}
+			incrementalState.save();
+			getLog().debug("Reused the verdicts of " + incrementalState.getReused() + " of "
+				+ violationCounts.size() + " artifacts from the previous run");
+		}
+		catch (IOException e)
+		{
+			getLog().warn("Unable to write the incremental state due to " + e.getMessage());
+		}
+	}
+
+	private void loadRepositoryIndex()
+	{
+		try (RepositoryIndex index = RepositoryIndex.open(repositoryIndex.toPath()))
+		{
+			indexedReferences =
+				index.findReferences(bannedClasses == null ? List.of() : bannedClasses);
+			indexedRepository = index;
+			getLog().debug("Using repository index " + repositoryIndex + ", "
+				+ indexedReferences.size() + " indexed jars use banned classes");
+		}
+		catch (IOException e)
+		{
+			getLog().warn("Unable to read " + repositoryIndex + " due to " + e.getMessage()
+				+ ", scanning all artifacts");
+		}
+	}
+
+	/**
+	 * Resolves the <code>classrefs</code> artifacts of the artifacts in the configured groups,
+	 * artifacts without one are scanned as usual.
+	 */
+	private void resolveClassReferences(List<Artifact> artifacts, IgnoreRules ignoreRules)
+	{
+		List<Pattern> groups = new ArrayList<>();
+		for (String group : classReferenceGroups)
+		{
+			groups.add(Pattern.compile(asRegex(group)));
+		}
+		List<Artifact> candidates = new ArrayList<>();
+		List<ArtifactRequest> requests = new ArrayList<>();
+		for (Artifact artifact : artifacts)
+		{
+			File file = artifact.getFile();
+			String groupId = artifact.getGroupId();
+			// The classrefs are the result of a full scan of every version of the classes, and
+			// only describe the main jar of a library
+			if (file == null || !file.getName().endsWith(".jar") || artifact.hasClassifier()
+				|| targetRelease != null
+				|| ignoreRules.getScanDepth(artifact, scanDepth) != ScanDepth.FULL
+				|| groups.stream().noneMatch(group -> group.matcher(groupId).matches()))
+				continue;
+			ArtifactRequest request = new ArtifactRequest();
+			request.setRepositories(session.getCurrentProject().getRemoteProjectRepositories());
+			request.setArtifact(new DefaultArtifact(artifact.getGroupId(), artifact.getArtifactId(),
+				ClassReferencesFile.CLASSIFIER, ClassReferencesFile.CLASSIFIER,
+				artifact.getVersion()));
+			candidates.add(artifact);
+			requests.add(request);
+		}
+		if (requests.isEmpty())
+			return;
+
+		List<ArtifactResult> results;
+		try
+		{
+			results = repositorySystem.resolveArtifacts(session.getRepositorySession(), requests);
+		}
+		catch (ArtifactResolutionException e)
+		{
+			// Libraries without class references are expected, they are scanned instead
+			results = e.getResults();
+		}
+		for (int index = 0; index < candidates.size(); index++)
+		{
+			ArtifactResult result = results.get(index);
+			if (result.isResolved())
+				classReferenceFiles.put(candidates.get(index), result.getArtifact().getFile());
+			else
+				getLog().debug("No class references found for " + candidates.get(index));
+		}
+		getLog().debug("Found class references for " + classReferenceFiles.size() + " of "
+			+ candidates.size() + " artifacts");
+	}
+
+	private ViolationHistory loadViolationHistory()
+	{
+		Path historyFile = Paths.get(session.getCurrentProject().getBuild().getDirectory(),
+			"ban-class-usage.violations");
+		try
+		{
+			return ViolationHistory.load(historyFile);
+		}
+		catch (IOException e)
+		{
+			getLog().debug("Unable to read " + historyFile + " due to " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void saveViolationHistory(ViolationHistory history)
+	{
+		for (Map.Entry<Artifact, Integer> entry : violationCounts.entrySet())
+		{
+			Artifact artifact = entry.getKey();
+			int violations = entry.getValue();
+			// A stopped scan found only part of the banned classes
+			if (partiallyChecked.contains(artifact))
+				violations = Math.max(violations, history.getViolations(artifact));
+			history.putViolations(artifact, violations);
+		}
+		try
+		{
+			history.save();
+		}
+		catch (IOException e)
+		{
+			getLog().warn("Unable to write the violation history due to " + e.getMessage());
+		}
+	}
+
+	private IgnoreRules getIgnoreRules()
+	{
+		return IGNORE_RULES.computeIfAbsent(IgnoreRules.getConfigurationKey(dependencies),
+			key -> createIgnoreRules());
+	}
+
+	private IgnoreRules createIgnoreRules()
 	{
 		List<IgnorableDependency> ignorableDependencies = new ArrayList<>();
 		if (dependencies != null)
@@ -156,39 +891,181 @@ public class BanClassUsage extends AbstractEnforcerRule
 					ignorableDependency.classifier =
 						Pattern.compile(asRegex(dependency.getClassifier()));
 				}
-				ignorableDependency.applyIgnoreClasses(dependency.getIgnoreClasses(), true);
+				ignorableDependency.scanDepth = dependency.getScanDepth();
+				if (dependency.getIgnoreClasses() != null)
+				{
+					for (String ignore : dependency.getIgnoreClasses())
+					{
+						getLog().debug("  Adding ignore: " + ignore);
+						ignorableDependency.ignores.add(ignore.replace('.', '/'));
+					}
+				}
 				ignorableDependencies.add(ignorableDependency);
 			}
 		}
+		return new IgnoreRules(ignorableDependencies);
+	}
 
-		StopWatch sw = new StopWatch();
-		sw.start();
-		StringBuilder error = new StringBuilder();
-		for (Artifact artifact : artifacts)
+	private void scanArtifacts(List<Artifact> artifacts, IgnoreRules ignoreRules)
+			throws EnforcerRuleException
+	{
+		int threadCount = getThreadCount();
+		if (threadCount <= 1)
 		{
-			if (scopes != null && !scopes.contains(artifact.getScope()))
+			for (Artifact artifact : artifacts)
 			{
-				getLog().debug("Skipping " + artifact + " due to scope");
-				continue;
+				if (failFast != null && failFast.isStopped())
+					break;
+				getLog().debug("Analyzing artifact " + artifact);
+				checkArtifact(artifact, ignoreRules.forArtifact(artifact),
+					ignoreRules.getScanDepth(artifact, scanDepth));
 			}
+			return;
+		}
 
-			getLog().debug("Analyzing artifact " + artifact);
-			Set<String> banned = getBannedClasses(artifact, ignorableDependencies);
-			if (!banned.isEmpty())
+		getLog().debug("Scanning " + artifacts.size() + " artifacts using " + threadCount
+			+ " threads");
+		inflightBytes = new InflightBytes(maxInflightBytes);
+		executorThreads = threadCount;
+		AtomicInteger threadNumber = new AtomicInteger();
+		// Class directories are split over the same threads, see scanDirectory
+		executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread =
+				new Thread(runnable, "ban-class-usage-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try
+		{
+			List<Future<?>> futures = new ArrayList<>();
+			for (Artifact artifact : artifacts)
+			{
+				futures.add(executor.submit(() -> {
+					// The class files of a directory are counted as they are read
+					File file = artifact.getFile();
+					int permits = file != null && file.isDirectory() ? 0
+						: inflightBytes.acquire(getFileSize(artifact));
+					try
+					{
+						if (failFast != null && failFast.isStopped())
+							return null;
+						getLog().debug("Analyzing artifact " + artifact);
+						checkArtifact(artifact, ignoreRules.forArtifact(artifact),
+							ignoreRules.getScanDepth(artifact, scanDepth));
+					}
+					finally
+					{
+						inflightBytes.release(permits);
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures)
 			{
-				error.append("\n  Banned classes found in " + artifact.toString() + ":\n");
-				banned.forEach(s -> error.append("    " + s + "\n"));
+				future.get();
 			}
 		}
-		sw.stop();
-		getLog().debug("BanClassUsage took " + sw.getTime() + "ms");
-		if (error.length() > 0)
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof EnforcerRuleException)
+				throw (EnforcerRuleException) e.getCause();
+			throw new EnforcerRuleException("Error while scanning artifacts", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new EnforcerRuleException("Interrupted while scanning artifacts", e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Checks the banned classes reachable from the project classes, reporting them with the chain
+	 * of classes that reaches them.
+	 */
+	private void scanReachable(Artifact projectClasses, List<Artifact> artifacts,
+			IgnoreRules ignoreRules) throws EnforcerRuleException
+	{
+		List<Artifact> entries = new ArrayList<>();
+		entries.add(projectClasses);
+		for (Artifact artifact : artifacts)
+		{
+			File file = artifact.getFile();
+			if (file != null && (file.isDirectory() || file.getName().endsWith(".jar")))
+				entries.add(artifact);
+		}
+		int[] violations = new int[entries.size()];
+		long start = System.nanoTime();
+		try (ReachabilityScanner scanner = new ReachabilityScanner(engine, getLog()))
+		{
+			if (failFast != null)
+				scanner.setFailFast(failFast);
+			for (Artifact artifact : entries)
+			{
+				ClassIgnoreMatcher ignores = ignoreRules.forArtifact(artifact);
+				Predicate<String> isViolation =
+					artifact != projectClasses || checkProjectClasses
+						? className -> classUsageScanner.isBanned(className, ignores)
+						: className -> false;
+				// The ids of the scanner are the indexes in the entries
+				scanner.addEntry(artifact.getFile(), ignoreRules.getScanDepth(artifact, scanDepth),
+					isViolation);
+			}
+			scanner.scan(0, (entry, className, chain) -> {
+				Artifact artifact = entries.get(entry);
+				violationReport.add(artifact.toString(), artifact.getFile(),
+					className.replace('/', '.'), chain);
+				violations[entry]++;
+			});
+			getLog().debug("Parsed " + scanner.getClassesParsed() + " of "
+				+ scanner.getClassesIndexed() + " classes, reachable from " + projectClasses
+				+ ", " + scanner.getClassesNotFound() + " referenced classes are not on the "
+				+ "class path");
+			classesParsed.addAndGet(scanner.getClassesParsed());
+			for (int entry = 0; entry < entries.size(); entry++)
+			{
+				Artifact artifact = entries.get(entry);
+				ScanMetrics.ArtifactMetrics artifactMetrics = metrics.forArtifact(artifact);
+				artifactMetrics.setSource("reachability");
+				artifactMetrics.addParsed(0, 0, scanner.getClassesParsed(entry), 0);
+				artifactMetrics.setMatches(violations[entry]);
+				violationCounts.put(artifact, violations[entry]);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new EnforcerRuleException("IOException while scanning the reachable classes", e);
+		}
+		metrics.forArtifact(projectClasses).setScanNanos(System.nanoTime() - start);
+	}
+
+	private int getThreadCount() throws EnforcerRuleException
+	{
+		if (threads == null || threads.isBlank())
+			return 1;
+		if ("auto".equalsIgnoreCase(threads.trim()))
+			return Runtime.getRuntime().availableProcessors();
+		try
+		{
+			return Math.max(1, Integer.parseInt(threads.trim()));
+		}
+		catch (NumberFormatException e)
 		{
 			throw new EnforcerRuleException(
-				"One or more dependencies use classes that are banned:\n" + error.toString());
+				"Invalid value for threads: '" + threads + "', expected a number or 'auto'", e);
 		}
 	}
 
+	private static long getFileSize(Artifact artifact)
+	{
+		File file = artifact.getFile();
+		return file == null ? 0 : file.length();
+	}
+
 	protected static String asRegex(String wildcard)
 	{
 		StringBuilder result = new StringBuilder(wildcard.length());
@@ -226,134 +1103,229 @@ public class BanClassUsage extends AbstractEnforcerRule
 		return result.toString();
 	}
 
-	private Set<String> getBannedClasses(Artifact artifact,
-			List<IgnorableDependency> ignorableDependencies) throws EnforcerRuleException
+	/**
+	 * Writes the banned classes used by the artifact to the violation report as they are matched,
+	 * so they are not kept in memory unless the incremental state needs them.
+	 */
+	private void checkArtifact(Artifact artifact, ClassIgnoreMatcher ignores, ScanDepth depth)
+			throws EnforcerRuleException
 	{
-		Set<String> ret = new TreeSet<>();
 		File file = artifact.getFile();
 		getLog().debug("isBadArtifact() a: " + artifact + " Artifact getFile(): " + file);
 		if (file == null)
 		{
 			// This happens if someone defines dependencies instead of dependencyManagement in a pom
 			// file which packaging type is pom.
-			return ret;
-		}
-		if (!file.getName().endsWith(".jar"))
-		{
-			return ret;
+			putVerdict(artifact, 0, Set.of());
+			return;
 		}
-		try (JarFile jarFile = new JarFile(file))
+		if (!file.isDirectory() && !file.getName().endsWith(".jar")
+			&& !file.getName().endsWith(".war") && !file.getName().endsWith(".ear"))
 		{
-			getLog().debug(file.getName() + " => " + file.getPath());
-			for (JarEntry entry : jarFile.stream().collect(Collectors.toList()))
-			{
-				if (!entry.isDirectory() && entry.getName().endsWith(".class"))
-				{
-					try (InputStream is = jarFile.getInputStream(entry))
-					{
-						getLog().debug("Checking " + entry.getName());
-						ClassReader reader = new ClassReader(is);
-						ClassDependencyCollector collector = new ClassDependencyCollector();
-						reader.accept(collector, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-						collector.getDeps()
-							.stream()
-							.map(classname -> classname.replace("/", "."))
-							.filter(
-								classname -> isBanned(artifact, classname, ignorableDependencies))
-							.forEach(ret::add);
-					}
-					catch (Exception e)
-					{
-						getLog().warn("Skipping " + entry.getName() + " due to " + e.getMessage());
-					}
-				}
-			}
+			putVerdict(artifact, 0, Set.of());
+			return;
 		}
-		catch (IOException e)
+		ScanMetrics.ArtifactMetrics artifactMetrics = metrics.forArtifact(artifact);
+		Predicate<String> isViolation =
+			classname -> classUsageScanner.isBanned(classname, ignores);
+		long start = System.nanoTime();
+		Set<String> referencedClasses = null;
+		int indexedJar = getIndexedJar(file, depth);
+		File classReferences = classReferenceFiles.get(artifact);
+		if (indexedJar >= 0)
 		{
-			throw new EnforcerRuleException("IOException while reading " + file, e);
+			// The index only provides the banned classes, which is all that is needed here
+			referencedClasses = indexedReferences.getOrDefault(indexedJar, Set.of());
+			artifactMetrics.setSource("index");
 		}
-		catch (IllegalArgumentException e)
+		else if (classReferences != null)
 		{
-			throw new EnforcerRuleException("Error while reading " + file, e);
+			referencedClasses = readClassReferences(artifact, classReferences);
+			artifactMetrics.setSource("classrefs");
 		}
-		return ret;
-	}
-
-	private boolean isBanned(Artifact artifact, String classname,
-			List<IgnorableDependency> ignorableDependencies)
-	{
-		for (String bannedClass : bannedClasses)
+		if (referencedClasses == null)
 		{
-			if (bannedClass.endsWith("*"))
+			try
 			{
-				if (classname.startsWith(bannedClass.substring(0, bannedClass.length() - 1)))
-					return !isIgnored(artifact, classname, ignorableDependencies);
+				referencedClasses =
+					getReferencedClasses(artifact, depth, artifactMetrics, isViolation);
 			}
-			else if (classname.equals(bannedClass))
+			catch (ScanStoppedException e)
 			{
-				return !isIgnored(artifact, classname, ignorableDependencies);
+				getLog().debug(
+					"Stopped scanning " + artifact + ", enough banned classes were found");
+				referencedClasses = e.getReferencedClasses();
+				artifactMetrics.setSource("stopped");
+				partiallyChecked.add(artifact);
 			}
 		}
-		return false;
+		Set<String> verdict = incrementalState == null ? null : new TreeSet<>();
+		int violations = 0;
+		for (String className : referencedClasses)
+		{
+			if (!isViolation.test(className))
+				continue;
+			String binaryName = className.replace('/', '.');
+			violationReport.add(artifact.toString(), file, binaryName, null);
+			if (verdict != null)
+				verdict.add(binaryName);
+			violations++;
+		}
+		artifactMetrics.setScanNanos(System.nanoTime() - start);
+		artifactMetrics.setMatches(violations);
+		// Scans count the banned classes themselves, as they find them
+		if (failFast != null && !"scanned".equals(artifactMetrics.getSource())
+			&& !"stopped".equals(artifactMetrics.getSource()))
+			failFast.addViolations(violations);
+		putVerdict(artifact, violations, verdict);
 	}
 
-	private boolean isIgnored(Artifact artifact, String classname,
-			List<IgnorableDependency> ignorableDependencies)
+	/**
+	 * Returns the classes in the <code>classrefs</code> file of the artifact, or null when the
+	 * file cannot be read or was not written for the resolved jar, and the artifact has to be
+	 * scanned.
+	 */
+	private Set<String> readClassReferences(Artifact artifact, File classReferences)
 	{
-		for (IgnorableDependency curDependency : ignorableDependencies)
+		try
+		{
+			Set<String> ret =
+				ClassReferencesFile.read(classReferences.toPath(), Digests.sha1(artifact));
+			if (ret == null)
+				getLog().warn("The class references of " + artifact
+					+ " were not written for its jar, scanning it instead");
+			return ret;
+		}
+		catch (IOException e)
 		{
-			if (curDependency.matchesArtifact(artifact)
-				&& curDependency.matches(classname.replace(".", "/")))
-				return true;
+			getLog().warn("Unable to read the class references of " + artifact + " due to "
+				+ e.getMessage() + ", scanning it instead");
+			return null;
 		}
-		return false;
 	}
 
-	protected class IgnorableDependency
+	/**
+	 * Returns the id of the jar in the repository index, or -1 when it has to be scanned.
+	 */
+	private int getIndexedJar(File file, ScanDepth depth)
 	{
-		public Pattern groupId;
-
-		public Pattern artifactId;
+		// The index holds the references of a full scan of every version of multi-release jars
+		if (indexedRepository == null || depth != ScanDepth.FULL || targetRelease != null)
+			return -1;
+		return indexedRepository.getJar(file);
+	}
 
-		public Pattern classifier;
+	private Set<String> getReferencedClasses(Artifact artifact, ScanDepth depth,
+			ScanMetrics.ArtifactMetrics artifactMetrics, Predicate<String> isViolation)
+			throws EnforcerRuleException
+	{
+		File file = artifact.getFile();
+		if (file.isDirectory())
+		{
+			// Class files change without changing the directory, so the result cannot be shared
+			// with other modules, the index of the scanner finds the classes that changed
+			return scanDirectory(file, depth, artifactMetrics, isViolation);
+		}
+		// Replaced by the scan, unless another module scans the artifact
+		artifactMetrics.setSource("shared");
+		return classUsageScanner.getReferencedClasses(file, depth,
+			() -> loadReferencedClasses(artifact, depth, artifactMetrics, isViolation));
+	}
 
-		public Pattern type;
+	private Set<String> loadReferencedClasses(Artifact artifact, ScanDepth depth,
+			ScanMetrics.ArtifactMetrics artifactMetrics, Predicate<String> isViolation)
+			throws EnforcerRuleException
+	{
+		String key = null;
+		if (cache != null)
+		{
+			try
+			{
+				key = cache.getKey(artifact, classUsageScanner.getScanKey(depth));
+				Set<String> cached = cache.get(key);
+				if (cached != null)
+				{
+					getLog().debug("Using cached class references for " + artifact);
+					artifactMetrics.setSource("cache");
+					return cached;
+				}
+			}
+			catch (IOException e)
+			{
+				getLog().warn("Unable to read cached class references for " + artifact + " due to "
+					+ e.getMessage());
+			}
+		}
 
-		public List<Pattern> ignores = new ArrayList<>();
+		Set<String> ret =
+			readReferencedClasses(artifact.getFile(), depth, artifactMetrics, isViolation);
 
-		public IgnorableDependency applyIgnoreClasses(String[] ignores, boolean indent)
+		if (key != null)
 		{
-			String prefix = indent ? "  " : "";
-			for (String ignore : ignores)
+			try
+			{
+				cache.put(key, ret);
+			}
+			catch (IOException e)
 			{
-				getLog().debug(prefix + "Adding ignore: " + ignore);
-				ignore = ignore.replace('.', '/');
-				String pattern = asRegex(ignore);
-				getLog().debug(prefix + "Ignore: " + ignore + " maps to regex " + pattern);
-				this.ignores.add(Pattern.compile(pattern));
+				getLog().warn("Unable to cache class references for " + artifact + " due to "
+					+ e.getMessage());
 			}
-			return this;
 		}
+		return ret;
+	}
 
-		public boolean matchesArtifact(Artifact dup)
+	private Set<String> scanDirectory(File directory, ScanDepth depth,
+			ScanMetrics.ArtifactMetrics artifactMetrics, Predicate<String> isViolation)
+			throws EnforcerRuleException
+	{
+		artifactMetrics.setSource("scanned");
+		getLog().debug("Scanning class directory " + directory);
+		Path indexFile = Paths.get(session.getCurrentProject().getBuild().getDirectory(),
+			"ban-class-usage", Digests.sha1(directory.getAbsolutePath() + "\n"
+				+ classUsageScanner.getScanKey(depth)) + ".classes");
+		ClassDirectoryScanner scanner = classUsageScanner.newDirectoryScanner(depth);
+		if (executor != null)
+			scanner.setExecutor(executor, executorThreads, inflightBytes);
+		if (failFast != null)
+			scanner.setFailFast(failFast, isViolation);
+		long start = System.nanoTime();
+		try
 		{
-			return (artifactId == null || artifactId.matcher(dup.getArtifactId()).matches())
-				&& (groupId == null || groupId.matcher(dup.getGroupId()).matches())
-				&& (classifier == null || classifier.matcher(dup.getClassifier()).matches())
-				&& (type == null || type.matcher(dup.getType()).matches());
+			return classUsageScanner.scan(scanner, directory, indexFile);
 		}
+		finally
+		{
+			classFilesScanned.addAndGet(scanner.getScanned());
+			classFilesReused.addAndGet(scanner.getReused());
+			artifactMetrics.addParsed(System.nanoTime() - start, scanner.getBytesRead(),
+				scanner.getScanned() - scanner.getSkipped(), scanner.getSkipped());
+		}
+	}
 
-		public boolean matches(String className)
+	private Set<String> readReferencedClasses(File file, ScanDepth depth,
+			ScanMetrics.ArtifactMetrics artifactMetrics, Predicate<String> isViolation)
+			throws EnforcerRuleException
+	{
+		artifactMetrics.setSource("scanned");
+		ArchiveScanner scanner = classUsageScanner.newArchiveScanner(depth);
+		if (failFast != null)
+			scanner.setFailFast(failFast, isViolation);
+		long start = System.nanoTime();
+		try
 		{
-			for (Pattern p : ignores)
-			{
-				if (p.matcher(className).matches())
-				{
-					return true;
-				}
-			}
-			return false;
+			return classUsageScanner.scan(scanner, file);
+		}
+		finally
+		{
+			classesParsed.addAndGet(scanner.getClassesParsed());
+			classesSkipped.addAndGet(scanner.getClassesSkipped());
+			classesReused.addAndGet(scanner.getClassesReused());
+			nestedArchivesScanned.addAndGet(scanner.getNestedScanned());
+			nestedArchivesReused.addAndGet(scanner.getNestedReused());
+			artifactMetrics.addParsed(System.nanoTime() - start, file.length(),
+				scanner.getClassesParsed(), scanner.getClassesSkipped());
+			artifactMetrics.addReused(scanner.getClassesReused());
 		}
 	}
 }
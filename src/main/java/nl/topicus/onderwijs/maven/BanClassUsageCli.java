@@ -0,0 +1,188 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * Checks a class path for banned classes outside of maven, for example the class path of a
+ * Gradle build or an IDE. A check either runs in this JVM, or in a {@link ScanDaemon} that keeps
+ * the JIT warm and the classes referenced by each jar in memory between checks.
+ * <p>
+ * The <code>cli</code> profile, activated with <code>-Dcli</code> on JDK 13 and later, builds
+ * <code>ban-class-usage-cli.jar</code> with all dependencies, and an AppCDS archive
+ * <code>ban-class-usage-cli.jsa</code> from a training run, which cuts the startup time of a check
+ * when passed with <code>-XX:SharedArchiveFile</code>. The build fails when the archive cannot be
+ * used. It only works with the JDK build that created it, other JDKs ignore it with a warning.
+ */
+public final class BanClassUsageCli
+{
+	private static final String USAGE = "Usage:\n"
+		+ "  check --banned <classes> --classpath <path> [--ignore <classes>]\n"
+		+ "        [--depth FULL|API] [--engine ASM|CONSTANT_POOL] [--target-release <release>]\n"
+		+ "        [--threads <count>] [--daemon <file>] [--debug]\n"
+		+ "      Checks the jars and class directories on the path for the banned classes,\n"
+		+ "      separated by commas, with an optional wildcard at the end. Uses the daemon\n"
+		+ "      when one is running for the daemon file.\n"
+		+ "  daemon <file>\n"
+		+ "      Starts a daemon, listening on a loopback port that is written to the file.\n"
+		+ "  stop <file>\n"
+		+ "      Stops the daemon.\n"
+		+ "Exits with 1 when banned classes are found, and with 2 on errors.";
+
+	private BanClassUsageCli()
+	{
+	}
+
+	public static void main(String[] args) throws IOException
+	{
+		System.exit(run(Arrays.asList(args), System.out));
+	}
+
+	static int run(List<String> args, PrintStream out) throws IOException
+	{
+		if (args.size() == 2 && "daemon".equals(args.get(0)))
+		{
+			try (ScanDaemon daemon = new ScanDaemon(Paths.get(args.get(1)), new ConsoleLog(false)))
+			{
+				daemon.run();
+			}
+			return 0;
+		}
+		if (args.size() == 2 && "stop".equals(args.get(0)))
+			return ScanDaemon.request(Paths.get(args.get(1)), List.of("stop"), out);
+		if (args.isEmpty() || !"check".equals(args.get(0)))
+		{
+			out.println(USAGE);
+			return 2;
+		}
+
+		List<String> checkArgs = args.subList(1, args.size());
+		int daemonIndex = checkArgs.indexOf("--daemon");
+		if (daemonIndex >= 0 && daemonIndex + 1 < checkArgs.size())
+		{
+			List<String> forwarded = new ArrayList<>(checkArgs);
+			String daemonFile = forwarded.remove(daemonIndex + 1);
+			forwarded.remove(daemonIndex);
+			// Relative paths are resolved by the daemon, which may run in another directory
+			absoluteClasspath(forwarded);
+			try
+			{
+				return ScanDaemon.request(Paths.get(daemonFile), forwarded, out);
+			}
+			catch (IOException e)
+			{
+				System.err.println("[WARNING] Checking without the daemon: " + e.getMessage());
+				return check(forwarded, out, System.err, new SessionScanResults());
+			}
+		}
+		return check(checkArgs, out, System.err, new SessionScanResults());
+	}
+
+	private static void absoluteClasspath(List<String> args)
+	{
+		int index = args.indexOf("--classpath");
+		if (index < 0 || index + 1 >= args.size())
+			return;
+		List<String> entries = new ArrayList<>();
+		for (String entry : args.get(index + 1).split(File.pathSeparator))
+		{
+			if (!entry.isEmpty())
+				entries.add(new File(entry).getAbsolutePath());
+		}
+		args.set(index + 1, String.join(File.pathSeparator, entries));
+	}
+
+	/**
+	 * Runs a check with the given options, keeping the referenced classes in the results.
+	 *
+	 * @param err
+	 *            the stream for warnings and errors logged during the check
+	 * @return the exit code
+	 */
+	static int check(List<String> args, PrintStream out, PrintStream err,
+			SessionScanResults results)
+	{
+		Map<String, String> options = new HashMap<>();
+		boolean debug = false;
+		for (int index = 0; index < args.size(); index++)
+		{
+			String arg = args.get(index);
+			if ("--debug".equals(arg))
+			{
+				debug = true;
+			}
+			else if (arg.startsWith("--") && index + 1 < args.size())
+			{
+				options.put(arg.substring(2), args.get(++index));
+			}
+			else
+			{
+				out.println("Unknown argument " + arg + "\n" + USAGE);
+				return 2;
+			}
+		}
+		if (!options.containsKey("banned") || !options.containsKey("classpath"))
+		{
+			out.println(USAGE);
+			return 2;
+		}
+
+		try
+		{
+			List<File> entries = new ArrayList<>();
+			for (String entry : options.get("classpath").split(File.pathSeparator))
+			{
+				if (!entry.isEmpty())
+					entries.add(new File(entry));
+			}
+			String targetRelease = options.get("target-release");
+			ClasspathChecker checker = new ClasspathChecker(split(options.get("banned")),
+				split(options.getOrDefault("ignore", "")),
+				ScanEngine.valueOf(options.getOrDefault("engine", "ASM")),
+				ScanDepth.valueOf(options.getOrDefault("depth", "FULL")),
+				targetRelease == null ? null : Integer.valueOf(targetRelease), results,
+				new ConsoleLog(debug, out, err));
+			int threads = Integer.parseInt(options.getOrDefault("threads",
+				Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+			Map<String, Set<String>> bannedPerEntry = checker.check(entries, threads);
+			for (Map.Entry<String, Set<String>> entry : bannedPerEntry.entrySet())
+			{
+				out.println("Banned classes found in " + entry.getKey() + ":");
+				entry.getValue().forEach(className -> out.println("    " + className));
+			}
+			return bannedPerEntry.isEmpty() ? 0 : 1;
+		}
+		catch (EnforcerRuleException e)
+		{
+			out.println(e.getMessage() + (e.getCause() == null ? "" : ": " + e.getCause()));
+			return 2;
+		}
+		catch (IllegalArgumentException e)
+		{
+			out.println("Invalid argument: " + e.getMessage() + "\n" + USAGE);
+			return 2;
+		}
+	}
+
+	private static List<String> split(String value)
+	{
+		List<String> ret = new ArrayList<>();
+		for (String part : value.split(","))
+		{
+			if (!part.isBlank())
+				ret.add(part.trim());
+		}
+		return ret;
+	}
+}
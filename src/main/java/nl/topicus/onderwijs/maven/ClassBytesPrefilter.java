@@ -0,0 +1,151 @@
+package nl.topicus.onderwijs.maven;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Finds class files that cannot reference a banned class, without parsing them. Every class
+ * reference ends up in a UTF-8 constant of the class file, either as an internal name
+ * (<code>javax/ejb/EJB</code>) or inside a descriptor or signature
+ * (<code>Ljavax/ejb/EJB;</code>). So a class file can only reference a banned class when the
+ * raw bytes contain the internal name, or for a wildcard the prefix before the <code>*</code>.
+ * All names are searched at once with an Aho-Corasick automaton.
+ */
+public class ClassBytesPrefilter
+{
+	private final int[] byteClasses = new int[256];
+
+	private final int alphabetSize;
+
+	/**
+	 * Transition table of the automaton, indexed by <code>state * alphabetSize + byteClass</code>.
+	 */
+	private final int[] transitions;
+
+	private final boolean[] matches;
+
+	private final boolean matchesAll;
+
+	public ClassBytesPrefilter(Collection<String> bannedClasses)
+	{
+		List<byte[]> patterns = new ArrayList<>();
+		boolean all = false;
+		if (bannedClasses != null)
+		{
+			for (String bannedClass : bannedClasses)
+			{
+				String name = bannedClass.endsWith("*")
+					? bannedClass.substring(0, bannedClass.length() - 1) : bannedClass;
+				if (name.isEmpty())
+					all = true;
+				patterns.add(name.replace('.', '/').getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		matchesAll = all;
+
+		// Bytes that do not occur in any pattern all behave the same, they share class 0
+		int symbols = 1;
+		for (byte[] pattern : patterns)
+		{
+			for (byte b : pattern)
+			{
+				if (byteClasses[b & 0xFF] == 0)
+					byteClasses[b & 0xFF] = symbols++;
+			}
+		}
+		alphabetSize = symbols;
+
+		// Build the trie, -1 marks a missing edge
+		List<int[]> gotos = new ArrayList<>();
+		List<Boolean> terminal = new ArrayList<>();
+		gotos.add(newState());
+		terminal.add(false);
+		for (byte[] pattern : patterns)
+		{
+			int state = 0;
+			for (byte b : pattern)
+			{
+				int symbol = byteClasses[b & 0xFF];
+				if (gotos.get(state)[symbol] < 0)
+				{
+					gotos.get(state)[symbol] = gotos.size();
+					gotos.add(newState());
+					terminal.add(false);
+				}
+				state = gotos.get(state)[symbol];
+			}
+			terminal.set(state, true);
+		}
+
+		// Turn the trie into a DFA, following the failure links breadth first
+		int states = gotos.size();
+		transitions = new int[states * alphabetSize];
+		matches = new boolean[states];
+		int[] failure = new int[states];
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int symbol = 0; symbol < alphabetSize; symbol++)
+		{
+			int next = gotos.get(0)[symbol];
+			if (next < 0)
+			{
+				transitions[symbol] = 0;
+			}
+			else
+			{
+				transitions[symbol] = next;
+				failure[next] = 0;
+				queue.add(next);
+			}
+		}
+		matches[0] = terminal.get(0);
+		while (!queue.isEmpty())
+		{
+			int state = queue.poll();
+			matches[state] = terminal.get(state) || matches[failure[state]];
+			for (int symbol = 0; symbol < alphabetSize; symbol++)
+			{
+				int next = gotos.get(state)[symbol];
+				if (next < 0)
+				{
+					transitions[state * alphabetSize + symbol] =
+						transitions[failure[state] * alphabetSize + symbol];
+				}
+				else
+				{
+					transitions[state * alphabetSize + symbol] = next;
+					failure[next] = transitions[failure[state] * alphabetSize + symbol];
+					queue.add(next);
+				}
+			}
+		}
+	}
+
+	private int[] newState()
+	{
+		int[] ret = new int[alphabetSize];
+		Arrays.fill(ret, -1);
+		return ret;
+	}
+
+	/**
+	 * @return false when the class file cannot reference any of the banned classes
+	 */
+	public boolean mayReferenceBanned(byte[] classFile, int offset, int length)
+	{
+		if (matchesAll)
+			return true;
+		int state = 0;
+		for (int index = offset; index < offset + length; index++)
+		{
+			state = transitions[state * alphabetSize + byteClasses[classFile[index] & 0xFF]];
+			if (matches[state])
+				return true;
+		}
+		return false;
+	}
+}
@@ -2,9 +2,9 @@ package nl.topicus.onderwijs.maven;
 
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.stream.Stream;
 
 import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Handle;
@@ -13,16 +13,29 @@ import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.TypePath;
-import org.objectweb.asm.signature.SignatureReader;
-import org.objectweb.asm.signature.SignatureVisitor;
 
 public class ClassDependencyCollector extends ClassVisitor
 {
 	public Set<String> deps = new TreeSet<>();
 
+	private final SymbolTable symbols;
+
+	private final IntSet ids;
+
+	private final ScanDepth depth;
+
+	private final Descriptors.ClassNameConsumer classNames = this::addClass;
+
+	private final AnnotationDependencyCollector annotationCollector =
+		new AnnotationDependencyCollector();
+
+	private final FieldDependencyCollector fieldCollector = new FieldDependencyCollector();
+
+	private final MethodDependencyCollector methodCollector = new MethodDependencyCollector();
+
 	private class AnnotationDependencyCollector extends AnnotationVisitor
 	{
-		public AnnotationDependencyCollector()
+		private AnnotationDependencyCollector()
 		{
 			super(Opcodes.ASM9);
 		}
@@ -45,7 +58,7 @@ public class ClassDependencyCollector extends ClassVisitor
 		{
 			if (value instanceof Type)
 			{
-				addType((Type) value);
+				addDescriptorType((Type) value);
 			}
 		}
 
@@ -58,7 +71,7 @@ public class ClassDependencyCollector extends ClassVisitor
 
 	private class FieldDependencyCollector extends FieldVisitor
 	{
-		public FieldDependencyCollector()
+		private FieldDependencyCollector()
 		{
 			super(Opcodes.ASM9);
 		}
@@ -67,7 +80,7 @@ public class ClassDependencyCollector extends ClassVisitor
 		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -75,13 +88,13 @@ public class ClassDependencyCollector extends ClassVisitor
 				String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 	}
 
 	private class MethodDependencyCollector extends MethodVisitor
 	{
-		public MethodDependencyCollector()
+		private MethodDependencyCollector()
 		{
 			super(Opcodes.ASM9);
 		}
@@ -89,14 +102,14 @@ public class ClassDependencyCollector extends ClassVisitor
 		@Override
 		public AnnotationVisitor visitAnnotationDefault()
 		{
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
 		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -104,7 +117,7 @@ public class ClassDependencyCollector extends ClassVisitor
 				String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -112,7 +125,7 @@ public class ClassDependencyCollector extends ClassVisitor
 				boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -120,17 +133,14 @@ public class ClassDependencyCollector extends ClassVisitor
 		{
 			if (value instanceof Type)
 			{
-				addType((Type) value);
+				addInternalNameType((Type) value);
 			}
 		}
 
 		@Override
 		public void visitTypeInsn(int opcode, String type)
 		{
-			if (type.startsWith("["))
-				addTypeDescriptor(type);
-			else
-				addClass(type);
+			Descriptors.addClassOrArray(type, classNames);
 		}
 
 		@Override
@@ -164,7 +174,7 @@ public class ClassDependencyCollector extends ClassVisitor
 				String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -172,7 +182,7 @@ public class ClassDependencyCollector extends ClassVisitor
 				String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 
 		@Override
@@ -180,88 +190,51 @@ public class ClassDependencyCollector extends ClassVisitor
 				Label[] start, Label[] end, int[] index, String descriptor, boolean visible)
 		{
 			addTypeDescriptor(descriptor);
-			return new AnnotationDependencyCollector();
+			return annotationCollector;
 		}
 	}
 
-	private class SignatureDependencyCollector extends SignatureVisitor
+	public ClassDependencyCollector()
 	{
+		this(null, null);
+	}
 
-		public SignatureDependencyCollector()
-		{
-			super(Opcodes.ASM9);
-		}
-
-		@Override
-		public SignatureVisitor visitClassBound()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitInterfaceBound()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitSuperclass()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitInterface()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitParameterType()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitReturnType()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitExceptionType()
-		{
-			return this;
-		}
-
-		@Override
-		public SignatureVisitor visitArrayType()
-		{
-			return this;
-		}
-
-		@Override
-		public void visitClassType(String name)
-		{
-			addClass(name);
-		}
+	/**
+	 * Collects the dependencies as ids of the given symbol table into the given set, instead of
+	 * into {@link #getDeps()}.
+	 */
+	public ClassDependencyCollector(SymbolTable symbols, IntSet ids)
+	{
+		this(symbols, ids, ScanDepth.FULL);
+	}
 
-		@Override
-		public void visitInnerClassType(String name)
-		{
-			addClass(name);
-		}
+	/**
+	 * Like {@link #ClassDependencyCollector(SymbolTable, IntSet)}, but only collects the given
+	 * depth when used through {@link #collect(byte[], int, int)}.
+	 */
+	public ClassDependencyCollector(SymbolTable symbols, IntSet ids, ScanDepth depth)
+	{
+		super(Opcodes.ASM9);
+		this.symbols = symbols;
+		this.ids = ids;
+		this.depth = depth;
+	}
 
-		@Override
-		public SignatureVisitor visitTypeArgument(char wildcard)
-		{
-			return this;
-		}
+	/**
+	 * Visits the class file in the given range of the array with this collector. The collector
+	 * and its visitors for fields, methods and annotations are reused for every class.
+	 */
+	public void collect(byte[] classFile, int offset, int length)
+	{
+		new ClassReader(classFile, offset, length).accept(this, depth.getParsingOptions());
 	}
 
-	public ClassDependencyCollector()
+	/**
+	 * Clears the collected dependencies, so the collector can be used for the next class.
+	 */
+	public void reset()
 	{
-		super(Opcodes.ASM9);
+		deps.clear();
 	}
 
 	@Override
@@ -270,14 +243,17 @@ public class ClassDependencyCollector extends ClassVisitor
 	{
 		addSignature(signature);
 		addClass(superName);
-		Stream.of(interfaces).forEach(this::addClass);
+		for (String iface : interfaces)
+		{
+			addClass(iface);
+		}
 	}
 
 	@Override
 	public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
 	{
 		addTypeDescriptor(descriptor);
-		return new AnnotationDependencyCollector();
+		return annotationCollector;
 	}
 
 	@Override
@@ -286,7 +262,7 @@ public class ClassDependencyCollector extends ClassVisitor
 	{
 		addTypeDescriptor(descriptor);
 		addTypeSignature(signature);
-		return new FieldDependencyCollector();
+		return fieldCollector;
 	}
 
 	@Override
@@ -302,8 +278,13 @@ public class ClassDependencyCollector extends ClassVisitor
 		addMethodDescriptor(descriptor);
 		addSignature(signature);
 		if (exceptions != null)
-			Stream.of(exceptions).forEach(this::addClass);
-		return new MethodDependencyCollector();
+		{
+			for (String exception : exceptions)
+			{
+				addClass(exception);
+			}
+		}
+		return methodCollector;
 	}
 
 	@Override
@@ -311,55 +292,67 @@ public class ClassDependencyCollector extends ClassVisitor
 			boolean visible)
 	{
 		addTypeDescriptor(descriptor);
-		return new AnnotationDependencyCollector();
+		return annotationCollector;
 	}
 
 	private void addTypeSignature(String signature)
 	{
-		if (signature == null)
-			return;
-		SignatureReader sigReader = new SignatureReader(signature);
-		sigReader.acceptType(new SignatureDependencyCollector());
+		if (signature != null)
+			Descriptors.addTypeSignature(signature, 0, classNames);
 	}
 
 	private void addSignature(String signature)
 	{
-		if (signature == null)
-			return;
-		SignatureReader sigReader = new SignatureReader(signature);
-		sigReader.accept(new SignatureDependencyCollector());
+		if (signature != null)
+			Descriptors.addSignature(signature, classNames);
 	}
 
 	private void addTypeDescriptor(String descriptor)
 	{
-		addType(Type.getType(descriptor));
+		Descriptors.addTypeDescriptor(descriptor, 0, classNames);
 	}
 
 	private void addMethodDescriptor(String descriptor)
 	{
-		addType(Type.getReturnType(descriptor));
-		Stream.of(Type.getArgumentTypes(descriptor)).forEach(this::addType);
+		Descriptors.addMethodDescriptor(descriptor, classNames);
 	}
 
-	private void addType(Type type)
+	/**
+	 * Adds the class of a class literal in an annotation, which is created from a descriptor.
+	 * {@link Type#getDescriptor()} returns the string it was created from.
+	 */
+	private void addDescriptorType(Type type)
 	{
-		if (type.getSort() == Type.ARRAY)
-			addType(type.getElementType());
-		else if (type.getSort() == Type.OBJECT)
-		{
-			String descriptor = type.getDescriptor();
-			addClass(descriptor.substring(1, descriptor.length() - 1));
-		}
+		if (type.getSort() == Type.ARRAY || type.getSort() == Type.OBJECT)
+			addTypeDescriptor(type.getDescriptor());
+	}
+
+	/**
+	 * Adds the class of a class constant, which is created from an internal name or array
+	 * descriptor. {@link Type#getInternalName()} returns the string it was created from.
+	 */
+	private void addInternalNameType(Type type)
+	{
+		if (type.getSort() == Type.ARRAY || type.getSort() == Type.OBJECT)
+			Descriptors.addClassOrArray(type.getInternalName(), classNames);
 	}
 
 	private void addClass(String className)
 	{
 		if (className != null)
 		{
-			deps.add(className);
+			addClass(className, 0, className.length());
 		}
 	}
 
+	private void addClass(String source, int start, int end)
+	{
+		if (symbols != null)
+			ids.add(symbols.intern(source, start, end));
+		else
+			deps.add(source.substring(start, end));
+	}
+
 	public Set<String> getDeps()
 	{
 		return deps;
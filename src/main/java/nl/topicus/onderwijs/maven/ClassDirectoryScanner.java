@@ -0,0 +1,458 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * Collects the classes referenced by a directory of class files, such as the output directory of
+ * the project or of a module in the same reactor. The references of every class file are kept in
+ * an index file, together with its size and modification time, so only the class files that
+ * changed since the previous scan are read again. Changed class files are scanned in parallel
+ * when an executor is set, see {@link #setExecutor(Executor, int, InflightBytes)}.
+ * <p>
+ * The index file starts with a header line containing the configuration key, followed by a line
+ * per class file: <code>path, size, modification time, referenced classes</code>, separated by
+ * tabs, with the referenced classes separated by commas.
+ */
+public class ClassDirectoryScanner
+{
+	private static final String HEADER = "ban-class-usage-classes-1";
+
+	/**
+	 * Class files are small, scanning fewer than this per task is not worth the handoff.
+	 */
+	private static final int MIN_FILES_PER_TASK = 64;
+
+	private final ScanEngine engine;
+
+	private final ScanDepth depth;
+
+	private final ClassBytesPrefilter prefilter;
+
+	private final String configurationKey;
+
+	private final EnforcerLogger log;
+
+	private final AtomicInteger scanned = new AtomicInteger();
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	private final AtomicLong bytesRead = new AtomicLong();
+
+	private final Set<String> violations = ConcurrentHashMap.newKeySet();
+
+	private FailFast failFast;
+
+	private Predicate<String> isViolation;
+
+	private Executor executor;
+
+	private int parallelism = 1;
+
+	private InflightBytes inflightBytes;
+
+	/**
+	 * @param prefilter
+	 *            skips class files that cannot reference a banned class, may be null
+	 * @param configurationKey
+	 *            identifies everything besides the class files the results depend on, the index
+	 *            is discarded when it changes
+	 */
+	public ClassDirectoryScanner(ScanEngine engine, ScanDepth depth,
+			ClassBytesPrefilter prefilter, String configurationKey, EnforcerLogger log)
+	{
+		this.engine = engine;
+		this.depth = depth;
+		this.prefilter = prefilter;
+		this.configurationKey = configurationKey;
+		this.log = log;
+	}
+
+	/**
+	 * Counts the referenced classes for which the predicate holds as violations, and stops the
+	 * scan with a {@link ScanStoppedException} once enough violations have been found. The index
+	 * is not written when the scan stops.
+	 */
+	public void setFailFast(FailFast failFast, Predicate<String> isViolation)
+	{
+		this.failFast = failFast;
+		this.isViolation = isViolation;
+	}
+
+	/**
+	 * Scans the changed class files in at most the given number of tasks, the calling thread and
+	 * tasks on the executor, so the scan shares the threads of the other scans. The calling thread
+	 * never waits for a task that did not start, so the executor may be the one the scan runs on.
+	 *
+	 * @param inflightBytes
+	 *            limits the size of the class files read at the same time, may be null
+	 */
+	public void setExecutor(Executor executor, int parallelism, InflightBytes inflightBytes)
+	{
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+		this.inflightBytes = inflightBytes;
+	}
+
+	/**
+	 * Returns the internal names of the classes referenced by the class files in the directory,
+	 * reusing the results in the index file for the class files that did not change, and writes
+	 * the new results to the index file. Without an index file all class files are scanned.
+	 */
+	public Set<String> scan(Path directory, Path indexFile) throws IOException
+	{
+		Map<String, FileResult> previous =
+			indexFile == null ? new HashMap<>() : readIndex(indexFile);
+		Map<String, FileResult> current = new ConcurrentHashMap<>();
+		List<ClassFile> changed = new ArrayList<>();
+		for (ClassFile classFile : listClassFiles(directory))
+		{
+			FileResult result = previous.get(classFile.name);
+			if (result != null && result.size == classFile.size
+				&& result.lastModified == classFile.lastModified)
+			{
+				current.put(classFile.name, result);
+				reused.incrementAndGet();
+				countViolations(result.references);
+			}
+			else
+			{
+				changed.add(classFile);
+			}
+		}
+
+		try
+		{
+			scanChanged(changed, current);
+		}
+		catch (ScanStoppedException e)
+		{
+			throw new ScanStoppedException(getReferences(current));
+		}
+
+		if (indexFile != null)
+			writeIndex(indexFile, current);
+		return getReferences(current);
+	}
+
+	private void scanChanged(List<ClassFile> changed, Map<String, FileResult> results)
+			throws IOException
+	{
+		int tasks = executor == null ? 1
+			: Math.max(1, Math.min(parallelism, changed.size() / MIN_FILES_PER_TASK));
+		int perTask = (changed.size() + tasks - 1) / tasks;
+		// Smaller chunks than tasks, so the calling thread takes over the chunks of tasks that
+		// wait for a thread of the executor
+		int chunkSize = Math.max(MIN_FILES_PER_TASK, perTask / 4);
+		List<List<ClassFile>> chunks = new ArrayList<>();
+		for (int from = 0; from < changed.size(); from += chunkSize)
+		{
+			chunks.add(changed.subList(from, Math.min(changed.size(), from + chunkSize)));
+		}
+		AtomicInteger next = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(chunks.size());
+		AtomicReference<Exception> failure = new AtomicReference<>();
+		Runnable task = () -> {
+			int chunk;
+			while ((chunk = next.getAndIncrement()) < chunks.size())
+			{
+				try
+				{
+					scanChunk(chunks.get(chunk), results);
+				}
+				catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					failure.compareAndSet(null, e);
+				}
+				catch (RuntimeException e)
+				{
+					failure.compareAndSet(null, e);
+				}
+				finally
+				{
+					done.countDown();
+				}
+			}
+		};
+		try
+		{
+			for (int helper = 1; helper < tasks; helper++)
+			{
+				executor.execute(task);
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// The calling thread scans the remaining chunks
+		}
+		task.run();
+		try
+		{
+			// Only waits for the chunks other tasks are scanning, all chunks have been taken
+			done.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while scanning class files");
+		}
+		Exception e = failure.get();
+		if (e instanceof InterruptedException)
+			throw new InterruptedIOException("Interrupted while scanning class files");
+		if (e != null)
+			throw (RuntimeException) e;
+	}
+
+	private void scanChunk(List<ClassFile> classFiles, Map<String, FileResult> results)
+			throws InterruptedException
+	{
+		if (inflightBytes == null)
+		{
+			scanClassFiles(classFiles, results);
+			return;
+		}
+		long bytes = 0;
+		for (ClassFile classFile : classFiles)
+		{
+			bytes += classFile.size;
+		}
+		int permits = inflightBytes.acquire(bytes);
+		try
+		{
+			scanClassFiles(classFiles, results);
+		}
+		finally
+		{
+			inflightBytes.release(permits);
+		}
+	}
+
+	private static Set<String> getReferences(Map<String, FileResult> results)
+	{
+		Set<String> ret = new HashSet<>();
+		for (FileResult result : results.values())
+		{
+			ret.addAll(result.references);
+		}
+		return ret;
+	}
+
+	private void countViolations(Set<String> references)
+	{
+		if (isViolation == null)
+			return;
+		for (String reference : references)
+		{
+			// Each class is only counted the first time the directory references it
+			if (isViolation.test(reference) && violations.add(reference))
+				failFast.addViolations(1);
+		}
+	}
+
+	private List<ClassFile> listClassFiles(Path directory) throws IOException
+	{
+		List<ClassFile> ret = new ArrayList<>();
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".class"))
+				{
+					String name =
+						directory.relativize(file).toString().replace(File.separatorChar, '/');
+					ret.add(new ClassFile(name, file, attrs.size(),
+						attrs.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return ret;
+	}
+
+	private void scanClassFiles(List<ClassFile> classFiles, Map<String, FileResult> results)
+	{
+		// Each task has its own collector, which is not thread safe
+		SymbolTable symbols = new SymbolTable();
+		IntSet ids = new IntSet();
+		ScanEngine.Collector collector = engine.newCollector(symbols, ids, depth);
+		for (ClassFile classFile : classFiles)
+		{
+			if (failFast != null && failFast.isStopped())
+				throw new ScanStoppedException(Set.of());
+			try
+			{
+				byte[] bytes = Files.readAllBytes(classFile.path);
+				bytesRead.addAndGet(bytes.length);
+				Set<String> references = new HashSet<>();
+				if (prefilter == null || prefilter.mayReferenceBanned(bytes, 0, bytes.length))
+				{
+					ids.clear();
+					collector.collect(bytes, 0, bytes.length);
+					ids.forEach(id -> references.add(symbols.getName(id)));
+				}
+				else
+				{
+					skipped.incrementAndGet();
+				}
+				scanned.incrementAndGet();
+				countViolations(references);
+				results.put(classFile.name,
+					new FileResult(classFile.size, classFile.lastModified, references));
+			}
+			catch (IOException | RuntimeException e)
+			{
+				log.warn("Skipping " + classFile.path + " due to " + e.getMessage());
+			}
+		}
+	}
+
+	private Map<String, FileResult> readIndex(Path indexFile)
+	{
+		Map<String, FileResult> ret = new HashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8))
+		{
+			String header = reader.readLine();
+			if ((HEADER + "\t" + configurationKey).equals(header))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					String[] fields = line.split("\t", -1);
+					if (fields.length != 4)
+						continue;
+					Set<String> references = new HashSet<>();
+					if (!fields[3].isEmpty())
+						references.addAll(Arrays.asList(fields[3].split(",")));
+					ret.put(fields[0], new FileResult(Long.parseLong(fields[1]),
+						Long.parseLong(fields[2]), references));
+				}
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			// First scan
+		}
+		catch (IOException | NumberFormatException e)
+		{
+			log.debug("Ignoring unreadable index " + indexFile + ": " + e.getMessage());
+			ret.clear();
+		}
+		return ret;
+	}
+
+	private void writeIndex(Path indexFile, Map<String, FileResult> results) throws IOException
+	{
+		Files.createDirectories(indexFile.getParent());
+		Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER + "\t" + configurationKey);
+			writer.newLine();
+			for (Map.Entry<String, FileResult> entry : new TreeMap<>(results).entrySet())
+			{
+				FileResult result = entry.getValue();
+				writer.write(entry.getKey() + "\t" + result.size + "\t" + result.lastModified
+					+ "\t" + String.join(",", result.references));
+				writer.newLine();
+			}
+		}
+		Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return the number of class files that were read
+	 */
+	public int getScanned()
+	{
+		return scanned.get();
+	}
+
+	/**
+	 * @return the number of class files whose results were reused from the index
+	 */
+	public int getReused()
+	{
+		return reused.get();
+	}
+
+	/**
+	 * @return the number of class files that were read, but skipped by the prefilter
+	 */
+	public int getSkipped()
+	{
+		return skipped.get();
+	}
+
+	public long getBytesRead()
+	{
+		return bytesRead.get();
+	}
+
+	private static class ClassFile
+	{
+		private final String name;
+
+		private final Path path;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private ClassFile(String name, Path path, long size, long lastModified)
+		{
+			this.name = name;
+			this.path = path;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+	private static class FileResult
+	{
+		private final long size;
+
+		private final long lastModified;
+
+		private final Set<String> references;
+
+		private FileResult(long size, long lastModified, Set<String> references)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.references = references;
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * All ignored classes that apply to a single artifact, compiled into one matcher. Names and
+ * wildcards ending with <code>*</code> go into a {@link ClassNameMatcher}, the remaining
+ * wildcards are combined into a single regular expression.
+ */
+public class ClassIgnoreMatcher
+{
+	public static final ClassIgnoreMatcher NONE = new ClassIgnoreMatcher(new ArrayList<>());
+
+	private final ClassNameMatcher names;
+
+	private final Pattern wildcards;
+
+	private final boolean ignoresAll;
+
+	/**
+	 * Returns {@link #NONE} when nothing is ignored, so the matcher is not compiled again.
+	 *
+	 * @param ignores
+	 *            the ignored classes as wildcards on JVM internal names
+	 */
+	public static ClassIgnoreMatcher of(Collection<String> ignores)
+	{
+		return ignores.isEmpty() ? NONE : new ClassIgnoreMatcher(ignores);
+	}
+
+	/**
+	 * @param ignores
+	 *            the ignored classes as wildcards on JVM internal names
+	 */
+	public ClassIgnoreMatcher(Collection<String> ignores)
+	{
+		List<String> simple = new ArrayList<>();
+		List<String> complex = new ArrayList<>();
+		boolean all = false;
+		for (String ignore : ignores)
+		{
+			if (!ignore.isEmpty() && ignore.chars().allMatch(c -> c == '*'))
+				all = true;
+			int wildcard = ignore.indexOf('*');
+			if (ignore.indexOf('?') < 0 && (wildcard < 0 || wildcard == ignore.length() - 1))
+				simple.add(ignore);
+			else
+				complex.add(ignore);
+		}
+		this.names = new ClassNameMatcher(simple);
+		this.wildcards = complex.isEmpty() ? null
+			: Pattern.compile(complex.stream()
+				.map(ignore -> "(?:" + BanClassUsage.asRegex(ignore) + ")")
+				.collect(Collectors.joining("|")));
+		this.ignoresAll = all;
+	}
+
+	public boolean isIgnored(String internalName)
+	{
+		return ignoresAll || names.matches(internalName)
+			|| (wildcards != null && wildcards.matcher(internalName).matches());
+	}
+
+	/**
+	 * @return true when every class is ignored, so the artifact does not need to be scanned
+	 */
+	public boolean ignoresAll()
+	{
+		return ignoresAll;
+	}
+}
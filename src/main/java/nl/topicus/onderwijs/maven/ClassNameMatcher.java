@@ -0,0 +1,105 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches JVM internal class names (<code>javax/ejb/EJB</code>) against a list of class names,
+ * optionally ending with a wildcard (<code>javax.ejb.*</code>). The names are compiled into a
+ * trie, so a lookup takes time proportional to the length of the class name, regardless of the
+ * number of names.
+ */
+public class ClassNameMatcher
+{
+	private final char[][] labels;
+
+	private final int[][] children;
+
+	/**
+	 * The path to the node is one of the class names.
+	 */
+	private final boolean[] exact;
+
+	/**
+	 * The path to the node is the prefix of a wildcard, every name continuing from this node
+	 * matches.
+	 */
+	private final boolean[] wildcard;
+
+	public ClassNameMatcher(Collection<String> classNames)
+	{
+		List<Map<Character, Integer>> nodes = new ArrayList<>();
+		nodes.add(new TreeMap<>());
+		List<Boolean> exactNodes = new ArrayList<>();
+		exactNodes.add(false);
+		List<Boolean> wildcardNodes = new ArrayList<>();
+		wildcardNodes.add(false);
+
+		if (classNames != null)
+		{
+			for (String className : classNames)
+			{
+				boolean isWildcard = className.endsWith("*");
+				String name = (isWildcard ? className.substring(0, className.length() - 1)
+					: className).replace('.', '/');
+				int node = 0;
+				for (int index = 0; index < name.length(); index++)
+				{
+					Integer next = nodes.get(node).get(name.charAt(index));
+					if (next == null)
+					{
+						next = nodes.size();
+						nodes.get(node).put(name.charAt(index), next);
+						nodes.add(new TreeMap<>());
+						exactNodes.add(false);
+						wildcardNodes.add(false);
+					}
+					node = next;
+				}
+				if (isWildcard)
+					wildcardNodes.set(node, true);
+				else
+					exactNodes.set(node, true);
+			}
+		}
+
+		labels = new char[nodes.size()][];
+		children = new int[nodes.size()][];
+		exact = new boolean[nodes.size()];
+		wildcard = new boolean[nodes.size()];
+		for (int node = 0; node < nodes.size(); node++)
+		{
+			Map<Character, Integer> transitions = nodes.get(node);
+			labels[node] = new char[transitions.size()];
+			children[node] = new int[transitions.size()];
+			int index = 0;
+			for (Map.Entry<Character, Integer> transition : transitions.entrySet())
+			{
+				labels[node][index] = transition.getKey();
+				children[node][index] = transition.getValue();
+				index++;
+			}
+			exact[node] = exactNodes.get(node);
+			wildcard[node] = wildcardNodes.get(node);
+		}
+	}
+
+	public boolean matches(CharSequence internalName)
+	{
+		int node = 0;
+		for (int index = 0; index < internalName.length(); index++)
+		{
+			if (wildcard[node])
+				return true;
+			int transition = Arrays.binarySearch(labels[node], internalName.charAt(index));
+			if (transition < 0)
+				return false;
+			node = children[node][transition];
+		}
+		return exact[node] || wildcard[node];
+	}
+}
@@ -0,0 +1,252 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * Persistent cache of the classes referenced by a jar, as collected by
+ * {@link ClassDependencyCollector}. Entries are keyed by the coordinates and the SHA-1 of the jar
+ * and the scan options, and do not depend on the banned classes. Every entry is a separate file
+ * that is written atomically, so multiple builds can share the same cache directory. The
+ * references are written as {@link PrefixCompressedNames}.
+ */
+public class ClassReferenceCache
+{
+	private static final int MAGIC = 0x42435543;
+
+	private static final int VERSION = 1;
+
+	private static final String ENTRY_SUFFIX = ".refs";
+
+	private final Path directory;
+
+	private final long maxSize;
+
+	private final AtomicInteger hits = new AtomicInteger();
+
+	private final AtomicInteger misses = new AtomicInteger();
+
+	public ClassReferenceCache(Path directory, long maxSize)
+	{
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the cache key for the given artifact scanned with the given options, such as the
+	 * scan depth, see {@link Digests#sha1(Artifact)}.
+	 */
+	public String getKey(Artifact artifact, String scanKey) throws IOException
+	{
+		File file = artifact.getFile();
+		String digest = Digests.sha1(artifact);
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType()
+			+ ":" + (artifact.getClassifier() == null ? "" : artifact.getClassifier()) + ":"
+			+ artifact.getVersion() + ":" + file.length() + ":" + digest + ":" + scanKey;
+	}
+
+	/**
+	 * Returns the cached references for the given key, or null when the key is not in the cache.
+	 */
+	public Set<String> get(String key) throws IOException
+	{
+		Path entry = getEntryPath(key);
+		Set<String> ret;
+		try (DataInputStream in =
+			new DataInputStream(new BufferedInputStream(Files.newInputStream(entry))))
+		{
+			ret = readEntry(in, key);
+		}
+		catch (NoSuchFileException e)
+		{
+			ret = null;
+		}
+		catch (EOFException | StreamCorruptedException e)
+		{
+			// Probably a crashed build on a filesystem without atomic moves
+			Files.deleteIfExists(entry);
+			ret = null;
+		}
+		if (ret == null)
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		try
+		{
+			// The modification time is used as last access time for the LRU eviction
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		}
+		catch (IOException e)
+		{
+			// Evicted by another build in the meantime
+		}
+		return ret;
+	}
+
+	public void put(String key, Set<String> references) throws IOException
+	{
+		Path entry = getEntryPath(key);
+		Files.createDirectories(entry.getParent());
+		Path tmp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+		try
+		{
+			try (DataOutputStream out =
+				new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				writeEntry(out, key, references);
+			}
+			try
+			{
+				Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+			}
+			catch (AtomicMoveNotSupportedException e)
+			{
+				Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is below its maximum size. Only one
+	 * build at a time evicts entries, other builds skip eviction while the lock is taken.
+	 */
+	public void evict() throws IOException
+	{
+		if (!Files.isDirectory(directory))
+			return;
+		try (FileChannel channel = FileChannel.open(directory.resolve("evict.lock"),
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				FileLock lock = tryLock(channel))
+		{
+			if (lock == null)
+				return;
+
+			List<Path> entries;
+			try (Stream<Path> files = Files.walk(directory, 2))
+			{
+				entries = files.filter(p -> p.getFileName().toString().endsWith(ENTRY_SUFFIX))
+					.collect(Collectors.toList());
+			}
+			List<CacheFile> cacheFiles = new ArrayList<>();
+			long total = 0;
+			for (Path entry : entries)
+			{
+				try
+				{
+					CacheFile cacheFile = new CacheFile(entry, Files.size(entry),
+						Files.getLastModifiedTime(entry).toMillis());
+					cacheFiles.add(cacheFile);
+					total += cacheFile.size;
+				}
+				catch (NoSuchFileException e)
+				{
+					// Replaced or removed concurrently
+				}
+			}
+			if (total <= maxSize)
+				return;
+
+			cacheFiles.sort(Comparator.comparingLong(f -> f.lastAccess));
+			for (CacheFile cacheFile : cacheFiles)
+			{
+				if (total <= maxSize)
+					break;
+				Files.deleteIfExists(cacheFile.path);
+				total -= cacheFile.size;
+			}
+		}
+	}
+
+	private static FileLock tryLock(FileChannel channel) throws IOException
+	{
+		try
+		{
+			return channel.tryLock();
+		}
+		catch (OverlappingFileLockException e)
+		{
+			// Another module of a parallel build in this JVM is already evicting
+			return null;
+		}
+	}
+
+	public int getHits()
+	{
+		return hits.get();
+	}
+
+	public int getMisses()
+	{
+		return misses.get();
+	}
+
+	private Path getEntryPath(String key)
+	{
+		String hash = Digests.sha1(key);
+		return directory.resolve(hash.substring(0, 2)).resolve(hash + ENTRY_SUFFIX);
+	}
+
+	private static void writeEntry(DataOutputStream out, String key, Set<String> references)
+			throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(key);
+		PrefixCompressedNames.write(out, references);
+	}
+
+	private static Set<String> readEntry(DataInputStream in, String key) throws IOException
+	{
+		if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF()))
+			return null;
+		return PrefixCompressedNames.read(in);
+	}
+
+	private static class CacheFile
+	{
+		private final Path path;
+
+		private final long size;
+
+		private final long lastAccess;
+
+		private CacheFile(Path path, long size, long lastAccess)
+		{
+			this.path = path;
+			this.size = size;
+			this.lastAccess = lastAccess;
+		}
+	}
+}
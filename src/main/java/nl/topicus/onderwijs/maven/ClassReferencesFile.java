@@ -0,0 +1,80 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Reads and writes the <code>classrefs</code> file that {@link PublishClassReferences} attaches to
+ * a library: the internal names of all classes referenced by the classes of the library, from a
+ * full scan of every class, together with the SHA-1 of the jar they were found in. The file is
+ * only used for a jar with that SHA-1, so a file that does not belong to the resolved jar, such as
+ * the file of a jar that was published again, cannot hide banned classes.
+ * <p>
+ * The file starts with a magic number, a version and the SHA-1 of the jar in modified UTF-8,
+ * followed by the names as {@link PrefixCompressedNames}.
+ */
+public final class ClassReferencesFile
+{
+	/**
+	 * The classifier and the extension of the attached artifact.
+	 */
+	public static final String CLASSIFIER = "classrefs";
+
+	private static final int MAGIC = 0x42435552;
+
+	private static final int VERSION = 2;
+
+	private ClassReferencesFile()
+	{
+	}
+
+	/**
+	 * Writes the names found in the jar with the given SHA-1, replacing the file only once it is
+	 * complete.
+	 */
+	public static void write(Path file, String jarSha1, Collection<String> referencedClasses)
+			throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(jarSha1);
+			PrefixCompressedNames.write(out, referencedClasses);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Returns the names in the file, or null when the file was written for another jar.
+	 *
+	 * @param jarSha1
+	 *            the SHA-1 of the jar the names are needed for, see {@link Digests}
+	 * @throws IOException
+	 *             when the file cannot be read or is not a <code>classrefs</code> file of this
+	 *             version
+	 */
+	public static Set<String> read(Path file, String jarSha1) throws IOException
+	{
+		try (DataInputStream in =
+			new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(file + " is not a supported classrefs file");
+			if (!jarSha1.equalsIgnoreCase(in.readUTF()))
+				return null;
+			return PrefixCompressedNames.read(in);
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The classes referenced by single class files in archives, shared by all archive scans with the
+ * same configuration in a build, so byte-identical classes in different archives, such as the
+ * copies of a library in several shaded jars, are only parsed once. Class files are identified by
+ * the CRC and the size from the central directory, and the hash of their name.
+ * <p>
+ * Only classes that are seen more than once are kept: the first time a class file is seen only
+ * its key is recorded, the second time the result of the scan is kept, and later scans reuse it.
+ * When the number of class files is limited, all results are dropped once the limit is reached,
+ * so a long running process does not keep the classes of jars it no longer checks.
+ */
+public class ClassResults
+{
+	private static final long MAX_CLASS_SIZE = 0xFFFFFFFFL;
+
+	private final ConcurrentMap<Long, Result> results = new ConcurrentHashMap<>();
+
+	private final int maxSize;
+
+	public ClassResults()
+	{
+		this(0);
+	}
+
+	/**
+	 * @param maxSize
+	 *            the maximum number of class files, or 0 for no limit
+	 */
+	public ClassResults(int maxSize)
+	{
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Returns the internal names of the classes referenced by the class file, or null when it
+	 * has to be scanned.
+	 */
+	public String[] get(long crc, long size, String name)
+	{
+		if (!isClassSize(size))
+			return null;
+		Result result = results.get(getKey(crc, size));
+		return result != null && result.nameHash == name.hashCode() ? result.referencedClasses
+			: null;
+	}
+
+	/**
+	 * Records that the class file was scanned, keeping the result when it was scanned before.
+	 */
+	public void put(long crc, long size, String name, IntSet referencedClasses,
+			SymbolTable symbols)
+	{
+		if (!isClassSize(size))
+			return;
+		Long classKey = getKey(crc, size);
+		if (maxSize > 0 && results.size() >= maxSize && !results.containsKey(classKey))
+			results.clear();
+		results.compute(classKey, (key, result) -> {
+			if (result == null)
+				return new Result(name.hashCode(), null);
+			if (result.referencedClasses != null || result.nameHash != name.hashCode())
+				return result;
+			String[] names = new String[referencedClasses.size()];
+			for (int index = 0; index < names.length; index++)
+			{
+				names[index] = symbols.getName(referencedClasses.get(index));
+			}
+			return new Result(result.nameHash, names);
+		});
+	}
+
+	private static boolean isClassSize(long size)
+	{
+		return size >= 0 && size <= MAX_CLASS_SIZE;
+	}
+
+	private static Long getKey(long crc, long size)
+	{
+		// Unique for a 32 bit CRC and a size below 4GB, larger entries are never kept
+		return crc << 32 ^ size;
+	}
+
+	private static final class Result
+	{
+		private final int nameHash;
+
+		private final String[] referencedClasses;
+
+		private Result(int nameHash, String[] referencedClasses)
+		{
+			this.nameHash = nameHash;
+			this.referencedClasses = referencedClasses;
+		}
+	}
+}
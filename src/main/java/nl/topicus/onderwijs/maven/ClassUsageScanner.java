@@ -0,0 +1,128 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * Scans jars and class directories for the classes they reference and matches those against the
+ * banned classes, the same way for {@link BanClassUsage} and {@link ClasspathChecker}. The
+ * references of a jar are shared through the {@link SessionScanResults}, keyed by the file and
+ * everything besides its contents the result depends on.
+ */
+public class ClassUsageScanner
+{
+	private final List<String> bannedClasses;
+
+	private final ClassNameMatcher bannedClassMatcher;
+
+	private final ScanEngine engine;
+
+	private final Integer targetRelease;
+
+	private final ClassBytesPrefilter prefilter;
+
+	private final SessionScanResults results;
+
+	private final EnforcerLogger log;
+
+	/**
+	 * @param bannedClasses
+	 *            the banned classes, optionally ending with a wildcard
+	 * @param targetRelease
+	 *            the release to scan multi-release jars for, or null to scan all versions
+	 * @param prefilter
+	 *            whether to skip class files that cannot reference a banned class, the references
+	 *            found then only hold the banned classes
+	 */
+	public ClassUsageScanner(List<String> bannedClasses, ScanEngine engine,
+			Integer targetRelease, boolean prefilter, SessionScanResults results,
+			EnforcerLogger log)
+	{
+		this.bannedClasses = bannedClasses;
+		this.bannedClassMatcher = new ClassNameMatcher(bannedClasses);
+		this.engine = engine;
+		this.targetRelease = targetRelease;
+		this.prefilter = prefilter ? new ClassBytesPrefilter(bannedClasses) : null;
+		this.results = results;
+		this.log = log;
+	}
+
+	/**
+	 * Returns what the classes referenced by a file depend on besides its contents.
+	 */
+	public String getScanKey(ScanDepth depth)
+	{
+		// With the prefilter the result depends on the banned classes
+		return engine + ":" + depth + (targetRelease == null ? "" : ":release-" + targetRelease)
+			+ (prefilter == null ? "" : ":" + bannedClasses);
+	}
+
+	public boolean isBanned(String internalName, ClassIgnoreMatcher ignores)
+	{
+		return bannedClassMatcher.matches(internalName) && !ignores.isIgnored(internalName);
+	}
+
+	/**
+	 * Returns the classes referenced by an archive, running the scan only when no other module
+	 * or check scanned the same file with the same configuration.
+	 */
+	public Set<String> getReferencedClasses(File archive, ScanDepth depth,
+			SessionScanResults.Scan scan) throws EnforcerRuleException
+	{
+		String key = archive.getAbsolutePath() + ":" + archive.length() + ":"
+			+ archive.lastModified() + ":" + getScanKey(depth);
+		return results.getReferencedClasses(key, scan);
+	}
+
+	public ArchiveScanner newArchiveScanner(ScanDepth depth)
+	{
+		ArchiveScanner ret = new ArchiveScanner(engine, depth, prefilter, targetRelease,
+			getScanKey(depth), results.getNestedResults(), log);
+		ret.setClassResults(results.getClassResults(getScanKey(depth)));
+		return ret;
+	}
+
+	public ClassDirectoryScanner newDirectoryScanner(ScanDepth depth)
+	{
+		return new ClassDirectoryScanner(engine, depth, prefilter, getScanKey(depth), log);
+	}
+
+	public Set<String> scan(ArchiveScanner scanner, File archive) throws EnforcerRuleException
+	{
+		try
+		{
+			return scanner.scan(archive);
+		}
+		catch (IOException e)
+		{
+			throw new EnforcerRuleException("IOException while reading " + archive, e);
+		}
+		catch (IndexOutOfBoundsException | IllegalArgumentException e)
+		{
+			throw new EnforcerRuleException("Error while reading " + archive, e);
+		}
+	}
+
+	/**
+	 * @param indexFile
+	 *            the index of the class files scanned before, or null to scan all class files
+	 */
+	public Set<String> scan(ClassDirectoryScanner scanner, File directory, Path indexFile)
+			throws EnforcerRuleException
+	{
+		try
+		{
+			return scanner.scan(directory.toPath(), indexFile);
+		}
+		catch (IOException e)
+		{
+			throw new EnforcerRuleException("IOException while scanning " + directory, e);
+		}
+	}
+}
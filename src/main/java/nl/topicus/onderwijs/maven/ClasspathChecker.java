@@ -0,0 +1,131 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * Checks the jars and class directories of a class path for banned classes, outside of maven.
+ * The classes referenced by each entry are kept in the given {@link SessionScanResults}, so a
+ * long running process only scans an entry again when it changed.
+ */
+public class ClasspathChecker
+{
+	private final ClassUsageScanner scanner;
+
+	private final ClassIgnoreMatcher ignores;
+
+	private final ScanDepth depth;
+
+	private final EnforcerLogger log;
+
+	/**
+	 * @param bannedClasses
+	 *            the banned classes, optionally ending with a wildcard
+	 * @param ignoredClasses
+	 *            the classes that are allowed in every entry, optionally ending with a wildcard
+	 * @param targetRelease
+	 *            the release to scan multi-release jars for, or null to scan all versions
+	 */
+	public ClasspathChecker(List<String> bannedClasses, List<String> ignoredClasses,
+			ScanEngine engine, ScanDepth depth, Integer targetRelease, SessionScanResults results,
+			EnforcerLogger log)
+	{
+		this.scanner =
+			new ClassUsageScanner(bannedClasses, engine, targetRelease, true, results, log);
+		List<String> ignores = new ArrayList<>();
+		for (String ignore : ignoredClasses)
+		{
+			ignores.add(ignore.replace('.', '/'));
+		}
+		this.ignores = ClassIgnoreMatcher.of(ignores);
+		this.depth = depth;
+		this.log = log;
+	}
+
+	/**
+	 * Returns the banned classes used by each entry of the class path that uses any, by the path
+	 * of the entry.
+	 */
+	public Map<String, Set<String>> check(List<File> entries, int threads)
+			throws EnforcerRuleException
+	{
+		List<Callable<Set<String>>> tasks = new ArrayList<>();
+		for (File entry : entries)
+		{
+			tasks.add(() -> getBannedClasses(entry));
+		}
+		Map<String, Set<String>> ret = new TreeMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		try
+		{
+			List<Future<Set<String>>> futures = executor.invokeAll(tasks);
+			for (int index = 0; index < entries.size(); index++)
+			{
+				Set<String> banned = futures.get(index).get();
+				if (!banned.isEmpty())
+					ret.put(entries.get(index).getPath(), banned);
+			}
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof EnforcerRuleException)
+				throw (EnforcerRuleException) e.getCause();
+			throw new EnforcerRuleException("Error while scanning", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new EnforcerRuleException("Interrupted while scanning", e);
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+		return ret;
+	}
+
+	private Set<String> getBannedClasses(File entry) throws EnforcerRuleException
+	{
+		Set<String> ret = new TreeSet<>();
+		String name = entry.getName();
+		if (!entry.isDirectory() && !name.endsWith(".jar") && !name.endsWith(".war")
+			&& !name.endsWith(".ear"))
+		{
+			if (!entry.exists())
+				log.warn("Skipping " + entry + ", it does not exist");
+			return ret;
+		}
+		for (String className : getReferencedClasses(entry))
+		{
+			if (scanner.isBanned(className, ignores))
+				ret.add(className.replace('/', '.'));
+		}
+		return ret;
+	}
+
+	private Set<String> getReferencedClasses(File entry) throws EnforcerRuleException
+	{
+		if (entry.isDirectory())
+		{
+			// Class files change without changing the directory, so directories are always
+			// scanned
+			log.debug("Scanning class directory " + entry);
+			return scanner.scan(scanner.newDirectoryScanner(depth), entry, null);
+		}
+		return scanner.getReferencedClasses(entry, depth,
+			() -> scanner.scan(scanner.newArchiveScanner(depth), entry));
+	}
+}
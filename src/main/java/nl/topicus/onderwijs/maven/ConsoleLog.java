@@ -0,0 +1,128 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.PrintStream;
+import java.util.function.Supplier;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * Logs to the console, for the tools that run outside of maven. Warnings and errors go to
+ * standard error, everything else to standard output, unless other streams are given.
+ */
+public class ConsoleLog implements EnforcerLogger
+{
+	private final boolean debug;
+
+	private final PrintStream out;
+
+	private final PrintStream err;
+
+	public ConsoleLog(boolean debug)
+	{
+		this(debug, System.out, System.err);
+	}
+
+	/**
+	 * @param out
+	 *            the stream for debug and info messages
+	 * @param err
+	 *            the stream for warnings and errors
+	 */
+	public ConsoleLog(boolean debug, PrintStream out, PrintStream err)
+	{
+		this.debug = debug;
+		this.out = out;
+		this.err = err;
+	}
+
+	@Override
+	public void warnOrError(CharSequence message)
+	{
+		warn(message);
+	}
+
+	@Override
+	public void warnOrError(Supplier<CharSequence> messageSupplier)
+	{
+		warn(messageSupplier);
+	}
+
+	@Override
+	public boolean isDebugEnabled()
+	{
+		return debug;
+	}
+
+	@Override
+	public void debug(CharSequence message)
+	{
+		if (debug)
+			print(out, "DEBUG", message);
+	}
+
+	@Override
+	public void debug(Supplier<CharSequence> messageSupplier)
+	{
+		if (debug)
+			print(out, "DEBUG", messageSupplier.get());
+	}
+
+	@Override
+	public boolean isInfoEnabled()
+	{
+		return true;
+	}
+
+	@Override
+	public void info(CharSequence message)
+	{
+		print(out, "INFO", message);
+	}
+
+	@Override
+	public void info(Supplier<CharSequence> messageSupplier)
+	{
+		info(messageSupplier.get());
+	}
+
+	@Override
+	public boolean isWarnEnabled()
+	{
+		return true;
+	}
+
+	@Override
+	public void warn(CharSequence message)
+	{
+		print(err, "WARNING", message);
+	}
+
+	@Override
+	public void warn(Supplier<CharSequence> messageSupplier)
+	{
+		warn(messageSupplier.get());
+	}
+
+	@Override
+	public boolean isErrorEnabled()
+	{
+		return true;
+	}
+
+	@Override
+	public void error(CharSequence message)
+	{
+		print(err, "ERROR", message);
+	}
+
+	@Override
+	public void error(Supplier<CharSequence> messageSupplier)
+	{
+		error(messageSupplier.get());
+	}
+
+	private static void print(PrintStream stream, String level, CharSequence message)
+	{
+		stream.println("[" + level + "] " + message);
+	}
+}
@@ -0,0 +1,610 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Collects the same dependencies as {@link ClassDependencyCollector}, but reads them straight
+ * from the class file bytes instead of visiting the class with ASM. Only the constant pool, the
+ * descriptors, the Signature, Exceptions, InnerClasses and annotation attributes are decoded. The
+ * bytecode is walked without decoding it, only to find the constant pool entries that are used by
+ * type, field, method and ldc instructions.
+ */
+public class ConstantPoolDependencyCollector
+{
+	private static final int UTF8 = 1;
+
+	private static final int INTEGER = 3;
+
+	private static final int FLOAT = 4;
+
+	private static final int LONG = 5;
+
+	private static final int DOUBLE = 6;
+
+	private static final int CLASS = 7;
+
+	private static final int STRING = 8;
+
+	private static final int FIELDREF = 9;
+
+	private static final int METHODREF = 10;
+
+	private static final int INTERFACE_METHODREF = 11;
+
+	private static final int NAME_AND_TYPE = 12;
+
+	private static final int METHOD_HANDLE = 15;
+
+	private static final int METHOD_TYPE = 16;
+
+	private static final int DYNAMIC = 17;
+
+	private static final int INVOKE_DYNAMIC = 18;
+
+	private static final int MODULE = 19;
+
+	private static final int PACKAGE = 20;
+
+	public Set<String> deps = new TreeSet<>();
+
+	private final SymbolTable symbols;
+
+	private final IntSet ids;
+
+	private final ScanDepth depth;
+
+	private final Descriptors.ClassNameConsumer classNames = this::addClass;
+
+	private byte[] b;
+
+	/**
+	 * Offset of the first byte after the tag of each constant pool entry.
+	 */
+	private int[] offsets;
+
+	private String[] strings;
+
+	private char[] charBuffer;
+
+	public ConstantPoolDependencyCollector()
+	{
+		this(null, null);
+	}
+
+	/**
+	 * Collects the dependencies as ids of the given symbol table into the given set, instead of
+	 * into {@link #getDeps()}.
+	 */
+	public ConstantPoolDependencyCollector(SymbolTable symbols, IntSet ids)
+	{
+		this(symbols, ids, ScanDepth.FULL);
+	}
+
+	/**
+	 * Like {@link #ConstantPoolDependencyCollector(SymbolTable, IntSet)}, but only collects the
+	 * given depth. With {@link ScanDepth#API} the Code attributes are skipped.
+	 */
+	public ConstantPoolDependencyCollector(SymbolTable symbols, IntSet ids, ScanDepth depth)
+	{
+		this.symbols = symbols;
+		this.ids = ids;
+		this.depth = depth;
+	}
+
+	public ConstantPoolDependencyCollector collect(byte[] classFile)
+	{
+		return collect(classFile, 0, classFile.length);
+	}
+
+	public ConstantPoolDependencyCollector collect(byte[] classFile, int offset, int length)
+	{
+		b = classFile;
+		if (length < 10 || readInt(offset) != 0xCAFEBABE)
+			throw new IllegalArgumentException("Not a class file");
+		int count = readUnsignedShort(offset + 8);
+		// The buffers are kept for the next class, and only grow when a class needs more
+		if (offsets == null || offsets.length < count)
+		{
+			offsets = new int[count];
+			strings = new String[count];
+		}
+		else
+		{
+			Arrays.fill(strings, 0, count, null);
+		}
+		int maxStringLength = 0;
+		int pos = offset + 10;
+		for (int index = 1; index < count; index++)
+		{
+			offsets[index] = pos + 1;
+			int tag = b[pos];
+			switch (tag)
+			{
+				case FIELDREF:
+				case METHODREF:
+				case INTERFACE_METHODREF:
+				case INTEGER:
+				case FLOAT:
+				case NAME_AND_TYPE:
+				case DYNAMIC:
+				case INVOKE_DYNAMIC:
+					pos += 5;
+					break;
+				case LONG:
+				case DOUBLE:
+					pos += 9;
+					index++;
+					break;
+				case UTF8:
+					int stringLength = readUnsignedShort(pos + 1);
+					maxStringLength = Math.max(maxStringLength, stringLength);
+					pos += 3 + stringLength;
+					break;
+				case METHOD_HANDLE:
+					pos += 4;
+					break;
+				case CLASS:
+				case STRING:
+				case METHOD_TYPE:
+				case MODULE:
+				case PACKAGE:
+					pos += 3;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+			}
+		}
+		if (charBuffer == null || charBuffer.length < maxStringLength)
+			charBuffer = new char[maxStringLength];
+
+		// access_flags, this_class
+		pos += 4;
+		addClass(readClass(pos));
+		int interfaces = readUnsignedShort(pos + 2);
+		pos += 4;
+		for (int index = 0; index < interfaces; index++, pos += 2)
+		{
+			addClass(readClass(pos));
+		}
+
+		int fields = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < fields; index++)
+		{
+			addTypeDescriptor(readUtf8(pos + 4));
+			pos = readMemberAttributes(pos + 6, false);
+		}
+
+		int methods = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < methods; index++)
+		{
+			addMethodDescriptor(readUtf8(pos + 4));
+			pos = readMemberAttributes(pos + 6, true);
+		}
+
+		int attributes = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < attributes; index++)
+		{
+			String name = readUtf8(pos);
+			int attributeLength = readInt(pos + 2);
+			pos += 6;
+			switch (name)
+			{
+				case "Signature":
+					addSignature(readUtf8(pos));
+					break;
+				case "InnerClasses":
+					int classes = readUnsignedShort(pos);
+					for (int inner = 0; inner < classes; inner++)
+					{
+						addClass(readClass(pos + 2 + inner * 8 + 2));
+					}
+					break;
+				case "RuntimeVisibleAnnotations":
+				case "RuntimeInvisibleAnnotations":
+					readAnnotations(pos);
+					break;
+				case "RuntimeVisibleTypeAnnotations":
+				case "RuntimeInvisibleTypeAnnotations":
+					readTypeAnnotations(pos);
+					break;
+				default:
+					break;
+			}
+			pos += attributeLength;
+		}
+		return this;
+	}
+
+	private int readMemberAttributes(int pos, boolean method)
+	{
+		int attributes = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < attributes; index++)
+		{
+			String name = readUtf8(pos);
+			int attributeLength = readInt(pos + 2);
+			pos += 6;
+			switch (name)
+			{
+				case "Signature":
+					if (method)
+						addSignature(readUtf8(pos));
+					else
+						addTypeSignature(readUtf8(pos));
+					break;
+				case "Exceptions":
+					int exceptions = readUnsignedShort(pos);
+					for (int exception = 0; exception < exceptions; exception++)
+					{
+						addClass(readClass(pos + 2 + exception * 2));
+					}
+					break;
+				case "RuntimeVisibleAnnotations":
+				case "RuntimeInvisibleAnnotations":
+					readAnnotations(pos);
+					break;
+				case "RuntimeVisibleParameterAnnotations":
+				case "RuntimeInvisibleParameterAnnotations":
+					int parameters = b[pos] & 0xFF;
+					int annotations = pos + 1;
+					for (int parameter = 0; parameter < parameters; parameter++)
+					{
+						annotations = readAnnotations(annotations);
+					}
+					break;
+				case "RuntimeVisibleTypeAnnotations":
+				case "RuntimeInvisibleTypeAnnotations":
+					readTypeAnnotations(pos);
+					break;
+				case "AnnotationDefault":
+					readElementValue(pos);
+					break;
+				case "Code":
+					if (method && depth == ScanDepth.FULL)
+						readCode(pos);
+					break;
+				default:
+					break;
+			}
+			pos += attributeLength;
+		}
+		return pos;
+	}
+
+	private void readCode(int pos)
+	{
+		int codeLength = readInt(pos + 4);
+		int codeStart = pos + 8;
+		int codeEnd = codeStart + codeLength;
+		int current = codeStart;
+		while (current < codeEnd)
+		{
+			int opcode = b[current] & 0xFF;
+			switch (opcode)
+			{
+				case 0x10: // bipush
+				case 0x15: // iload
+				case 0x16: // lload
+				case 0x17: // fload
+				case 0x18: // dload
+				case 0x19: // aload
+				case 0x36: // istore
+				case 0x37: // lstore
+				case 0x38: // fstore
+				case 0x39: // dstore
+				case 0x3a: // astore
+				case 0xa9: // ret
+				case 0xbc: // newarray
+					current += 2;
+					break;
+				case 0x12: // ldc
+					addConstant(b[current + 1] & 0xFF);
+					current += 2;
+					break;
+				case 0x13: // ldc_w
+					addConstant(readUnsignedShort(current + 1));
+					current += 3;
+					break;
+				case 0xb2: // getstatic
+				case 0xb3: // putstatic
+				case 0xb4: // getfield
+				case 0xb5: // putfield
+					addTypeDescriptor(readMemberDescriptor(readUnsignedShort(current + 1)));
+					current += 3;
+					break;
+				case 0xb6: // invokevirtual
+				case 0xb7: // invokespecial
+				case 0xb8: // invokestatic
+					addMethodDescriptor(readMemberDescriptor(readUnsignedShort(current + 1)));
+					current += 3;
+					break;
+				case 0xb9: // invokeinterface
+				case 0xba: // invokedynamic
+					addMethodDescriptor(readMemberDescriptor(readUnsignedShort(current + 1)));
+					current += 5;
+					break;
+				case 0xbb: // new
+				case 0xbd: // anewarray
+				case 0xc0: // checkcast
+				case 0xc1: // instanceof
+					addClassOrArray(readClass(current + 1));
+					current += 3;
+					break;
+				case 0xc5: // multianewarray
+					addClassOrArray(readClass(current + 1));
+					current += 4;
+					break;
+				case 0x11: // sipush
+				case 0x14: // ldc2_w
+				case 0x84: // iinc
+				case 0xc6: // ifnull
+				case 0xc7: // ifnonnull
+					current += 3;
+					break;
+				case 0xc8: // goto_w
+				case 0xc9: // jsr_w
+					current += 5;
+					break;
+				case 0xc4: // wide
+					current += (b[current + 1] & 0xFF) == 0x84 ? 6 : 4;
+					break;
+				case 0xaa: // tableswitch
+				{
+					int aligned = current + 4 - ((current - codeStart) & 3);
+					int low = readInt(aligned + 4);
+					int high = readInt(aligned + 8);
+					current = aligned + 12 + (high - low + 1) * 4;
+					break;
+				}
+				case 0xab: // lookupswitch
+				{
+					int aligned = current + 4 - ((current - codeStart) & 3);
+					int pairs = readInt(aligned + 4);
+					current = aligned + 8 + pairs * 8;
+					break;
+				}
+				default:
+					// if<cond>, if_<cmp>, goto and jsr take a 2 byte offset, everything else
+					// has no operands
+					current += opcode >= 0x99 && opcode <= 0xa8 ? 3 : 1;
+					break;
+			}
+		}
+
+		int exceptionTableLength = readUnsignedShort(codeEnd);
+		pos = codeEnd + 2 + exceptionTableLength * 8;
+		int attributes = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < attributes; index++)
+		{
+			String name = readUtf8(pos);
+			int attributeLength = readInt(pos + 2);
+			pos += 6;
+			if ("RuntimeVisibleTypeAnnotations".equals(name)
+				|| "RuntimeInvisibleTypeAnnotations".equals(name))
+			{
+				readTypeAnnotations(pos);
+			}
+			pos += attributeLength;
+		}
+	}
+
+	private void addConstant(int index)
+	{
+		// Only class constants, ASM reports method types and dynamic constants as other objects
+		if (b[offsets[index] - 1] == CLASS)
+			addClassOrArray(readUtf8(offsets[index]));
+	}
+
+	private String readMemberDescriptor(int refIndex)
+	{
+		int nameAndType = offsets[readUnsignedShort(offsets[refIndex] + 2)];
+		return readUtf8(nameAndType + 2);
+	}
+
+	private int readAnnotations(int pos)
+	{
+		int annotations = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < annotations; index++)
+		{
+			pos = readAnnotation(pos);
+		}
+		return pos;
+	}
+
+	private int readAnnotation(int pos)
+	{
+		addTypeDescriptor(readUtf8(pos));
+		int pairs = readUnsignedShort(pos + 2);
+		pos += 4;
+		for (int index = 0; index < pairs; index++)
+		{
+			pos = readElementValue(pos + 2);
+		}
+		return pos;
+	}
+
+	private int readElementValue(int pos)
+	{
+		switch (b[pos])
+		{
+			case 'e':
+				addTypeDescriptor(readUtf8(pos + 1));
+				return pos + 5;
+			case 'c':
+				addTypeDescriptor(readUtf8(pos + 1));
+				return pos + 3;
+			case '@':
+				return readAnnotation(pos + 1);
+			case '[':
+				int values = readUnsignedShort(pos + 1);
+				pos += 3;
+				for (int index = 0; index < values; index++)
+				{
+					pos = readElementValue(pos);
+				}
+				return pos;
+			default:
+				return pos + 3;
+		}
+	}
+
+	private void readTypeAnnotations(int pos)
+	{
+		int annotations = readUnsignedShort(pos);
+		pos += 2;
+		for (int index = 0; index < annotations; index++)
+		{
+			int targetType = b[pos] & 0xFF;
+			pos++;
+			switch (targetType)
+			{
+				case 0x00: // class type parameter
+				case 0x01: // method type parameter
+				case 0x16: // formal parameter
+					pos += 1;
+					break;
+				case 0x13: // field
+				case 0x14: // method return
+				case 0x15: // method receiver
+					break;
+				case 0x40: // local variable
+				case 0x41: // resource variable
+					pos += 2 + readUnsignedShort(pos) * 6;
+					break;
+				case 0x47: // cast
+				case 0x48: // constructor invocation type argument
+				case 0x49: // method invocation type argument
+				case 0x4a: // constructor reference type argument
+				case 0x4b: // method reference type argument
+					pos += 3;
+					break;
+				default:
+					// supertype, type parameter bound, throws, catch and the offset targets
+					pos += 2;
+					break;
+			}
+			// type_path
+			pos += 1 + (b[pos] & 0xFF) * 2;
+			pos = readAnnotation(pos);
+		}
+	}
+
+	private void addSignature(String signature)
+	{
+		Descriptors.addSignature(signature, classNames);
+	}
+
+	private void addTypeSignature(String signature)
+	{
+		Descriptors.addTypeSignature(signature, 0, classNames);
+	}
+
+	private void addTypeDescriptor(String descriptor)
+	{
+		Descriptors.addTypeDescriptor(descriptor, 0, classNames);
+	}
+
+	private void addMethodDescriptor(String descriptor)
+	{
+		Descriptors.addMethodDescriptor(descriptor, classNames);
+	}
+
+	private void addClassOrArray(String className)
+	{
+		Descriptors.addClassOrArray(className, classNames);
+	}
+
+	private void addClass(String className)
+	{
+		if (className != null)
+		{
+			addClass(className, 0, className.length());
+		}
+	}
+
+	private void addClass(String source, int start, int end)
+	{
+		if (symbols != null)
+			ids.add(symbols.intern(source, start, end));
+		else
+			deps.add(source.substring(start, end));
+	}
+
+	private String readClass(int pos)
+	{
+		int index = readUnsignedShort(pos);
+		return index == 0 ? null : readUtf8(offsets[index]);
+	}
+
+	private String readUtf8(int pos)
+	{
+		int index = readUnsignedShort(pos);
+		if (index == 0)
+			return null;
+		String ret = strings[index];
+		if (ret == null)
+		{
+			ret = decodeUtf8(offsets[index] + 2, readUnsignedShort(offsets[index]));
+			strings[index] = ret;
+		}
+		return ret;
+	}
+
+	/**
+	 * Decodes a modified UTF-8 string, see JVMS 4.4.7.
+	 */
+	private String decodeUtf8(int pos, int length)
+	{
+		int end = pos + length;
+		int chars = 0;
+		while (pos < end)
+		{
+			int c = b[pos++];
+			if ((c & 0x80) == 0)
+			{
+				charBuffer[chars++] = (char) (c & 0x7F);
+			}
+			else if ((c & 0xE0) == 0xC0)
+			{
+				charBuffer[chars++] = (char) (((c & 0x1F) << 6) + (b[pos++] & 0x3F));
+			}
+			else
+			{
+				charBuffer[chars++] =
+					(char) (((c & 0xF) << 12) + ((b[pos++] & 0x3F) << 6) + (b[pos++] & 0x3F));
+			}
+		}
+		return new String(charBuffer, 0, chars);
+	}
+
+	private int readUnsignedShort(int pos)
+	{
+		return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+	}
+
+	private int readInt(int pos)
+	{
+		return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8)
+			| (b[pos + 3] & 0xFF);
+	}
+
+	/**
+	 * Clears the collected dependencies, so the collector can be used for the next class.
+	 */
+	public void reset()
+	{
+		deps.clear();
+	}
+
+	public Set<String> getDeps()
+	{
+		return deps;
+	}
+}
@@ -16,6 +16,11 @@ public class Dependency
 	 */
 	private String[] ignoreClasses;
 
+	/**
+	 * Scan depth for the matching artifacts, overriding the scan depth of the rule
+	 */
+	private ScanDepth scanDepth;
+
 	/**
 	 * <p>
 	 * Getter for the field <code>groupId</code>.
@@ -141,6 +146,31 @@ public class Dependency
 		this.ignoreClasses = ignoreClasses;
 	}
 
+	/**
+	 * <p>
+	 * Getter for the field <code>scanDepth</code>.
+	 * </p>
+	 *
+	 * @return a {@link nl.topicus.onderwijs.maven.ScanDepth} object.
+	 */
+	public ScanDepth getScanDepth()
+	{
+		return scanDepth;
+	}
+
+	/**
+	 * <p>
+	 * Setter for the field <code>scanDepth</code>.
+	 * </p>
+	 *
+	 * @param scanDepth
+	 *            a {@link nl.topicus.onderwijs.maven.ScanDepth} object.
+	 */
+	public void setScanDepth(ScanDepth scanDepth)
+	{
+		this.scanDepth = scanDepth;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toString()
@@ -0,0 +1,157 @@
+package nl.topicus.onderwijs.maven;
+
+/**
+ * Finds the classes in descriptors and signatures by walking the string, without creating
+ * substrings, {@code Type}s or a {@code SignatureReader}. The classes are passed as a range of the
+ * string, so they can be interned without allocating.
+ */
+public final class Descriptors
+{
+	private Descriptors()
+	{
+	}
+
+	@FunctionalInterface
+	public interface ClassNameConsumer
+	{
+		/**
+		 * Accepts the internal name between <code>start</code> and <code>end</code> of the
+		 * source.
+		 */
+		void accept(String source, int start, int end);
+	}
+
+	/**
+	 * Adds the classes of a class or method signature, following {@code SignatureReader.accept}.
+	 */
+	public static void addSignature(String signature, ClassNameConsumer classes)
+	{
+		int pos = 0;
+		if (signature.charAt(pos) == '<')
+		{
+			pos++;
+			while (signature.charAt(pos) != '>')
+			{
+				pos = signature.indexOf(':', pos) + 1;
+				char c = signature.charAt(pos);
+				if (c == 'L' || c == '[' || c == 'T')
+					pos = addTypeSignature(signature, pos, classes);
+				while (signature.charAt(pos) == ':')
+				{
+					pos = addTypeSignature(signature, pos + 1, classes);
+				}
+			}
+			pos++;
+		}
+		if (signature.charAt(pos) == '(')
+		{
+			pos++;
+			while (signature.charAt(pos) != ')')
+			{
+				pos = addTypeSignature(signature, pos, classes);
+			}
+			pos = addTypeSignature(signature, pos + 1, classes);
+			while (pos < signature.length())
+			{
+				pos = addTypeSignature(signature, pos + 1, classes);
+			}
+		}
+		else
+		{
+			while (pos < signature.length())
+			{
+				pos = addTypeSignature(signature, pos, classes);
+			}
+		}
+	}
+
+	/**
+	 * Adds the classes of a type signature, following {@code SignatureReader.acceptType}. Like
+	 * {@code visitInnerClassType}, inner class types are added by their simple name.
+	 *
+	 * @return the position after the type signature
+	 */
+	public static int addTypeSignature(String signature, int pos, ClassNameConsumer classes)
+	{
+		char c = signature.charAt(pos++);
+		switch (c)
+		{
+			case '[':
+				return addTypeSignature(signature, pos, classes);
+			case 'T':
+				return signature.indexOf(';', pos) + 1;
+			case 'L':
+				int start = pos;
+				boolean visited = false;
+				while (true)
+				{
+					c = signature.charAt(pos++);
+					if (c == '.' || c == ';')
+					{
+						if (!visited)
+							classes.accept(signature, start, pos - 1);
+						if (c == ';')
+							return pos;
+						start = pos;
+						visited = false;
+					}
+					else if (c == '<')
+					{
+						classes.accept(signature, start, pos - 1);
+						visited = true;
+						while ((c = signature.charAt(pos)) != '>')
+						{
+							if (c == '*')
+								pos++;
+							else if (c == '+' || c == '-')
+								pos = addTypeSignature(signature, pos + 1, classes);
+							else
+								pos = addTypeSignature(signature, pos, classes);
+						}
+					}
+				}
+			default:
+				return pos;
+		}
+	}
+
+	/**
+	 * Adds the class of the type descriptor starting at the given position.
+	 *
+	 * @return the position after the type descriptor
+	 */
+	public static int addTypeDescriptor(String descriptor, int pos, ClassNameConsumer classes)
+	{
+		while (descriptor.charAt(pos) == '[')
+			pos++;
+		if (descriptor.charAt(pos) == 'L')
+		{
+			int end = descriptor.indexOf(';', pos);
+			classes.accept(descriptor, pos + 1, end);
+			return end + 1;
+		}
+		return pos + 1;
+	}
+
+	public static void addMethodDescriptor(String descriptor, ClassNameConsumer classes)
+	{
+		int pos = 1;
+		while (descriptor.charAt(pos) != ')')
+		{
+			pos = addTypeDescriptor(descriptor, pos, classes);
+		}
+		addTypeDescriptor(descriptor, pos + 1, classes);
+	}
+
+	/**
+	 * Adds an internal name, or the class of an array descriptor as used by type instructions and
+	 * class constants.
+	 */
+	public static void addClassOrArray(String className, ClassNameConsumer classes)
+	{
+		if (className.startsWith("["))
+			addTypeDescriptor(className, 0, classes);
+		else
+			classes.accept(className, 0, className.length());
+	}
+}
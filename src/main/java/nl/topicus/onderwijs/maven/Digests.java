@@ -0,0 +1,94 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * SHA-1 digests of artifacts and strings, as lowercase hex.
+ */
+public final class Digests
+{
+	private Digests()
+	{
+	}
+
+	/**
+	 * Returns the SHA-1 of the file of the artifact. Released artifacts use the {@code .sha1} file
+	 * maven stores next to the jar in the local repository, otherwise the digest is computed from
+	 * the jar itself.
+	 */
+	public static String sha1(Artifact artifact) throws IOException
+	{
+		File file = artifact.getFile();
+		String digest = null;
+		if (!artifact.isSnapshot())
+		{
+			digest = readSha1File(new File(file.getPath() + ".sha1"));
+		}
+		if (digest == null)
+		{
+			digest = sha1(file);
+		}
+		return digest;
+	}
+
+	public static String sha1(File file) throws IOException
+	{
+		MessageDigest digest = newSha1();
+		byte[] buffer = new byte[64 * 1024];
+		try (InputStream in = Files.newInputStream(file.toPath()))
+		{
+			int read;
+			while ((read = in.read(buffer)) > 0)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	public static String sha1(String value)
+	{
+		return toHex(newSha1().digest(value.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static String readSha1File(File sha1File) throws IOException
+	{
+		if (!sha1File.isFile())
+			return null;
+		String content = new String(Files.readAllBytes(sha1File.toPath()), StandardCharsets.UTF_8);
+		// Some repositories publish "<digest>  <filename>"
+		String digest = content.trim().split("\\s+")[0].toLowerCase();
+		return digest.matches("[0-9a-f]{40}") ? digest : null;
+	}
+
+	private static MessageDigest newSha1()
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder ret = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+		{
+			ret.append(Character.forDigit((b >> 4) & 0xF, 16));
+			ret.append(Character.forDigit(b & 0xF, 16));
+		}
+		return ret.toString();
+	}
+}
@@ -0,0 +1,39 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stops the scans of a run once enough banned classes have been found. The scanners count the
+ * banned classes they find and check before every class file whether to stop, so the artifacts
+ * that are scanned in parallel stop as well.
+ */
+public class FailFast
+{
+	private final int maxViolations;
+
+	private final AtomicInteger violations = new AtomicInteger();
+
+	public FailFast(int maxViolations)
+	{
+		this.maxViolations = maxViolations;
+	}
+
+	public void addViolations(int count)
+	{
+		if (count > 0)
+			violations.addAndGet(count);
+	}
+
+	public boolean isStopped()
+	{
+		return violations.get() >= maxViolations;
+	}
+
+	/**
+	 * @return the number of banned classes found, counted once per artifact
+	 */
+	public int getViolations()
+	{
+		return violations.get();
+	}
+}
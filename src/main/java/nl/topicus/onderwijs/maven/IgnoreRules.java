@@ -0,0 +1,116 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The compiled ignore rules of a {@link BanClassUsage} configuration. The ignored classes that
+ * apply to an artifact are resolved and compiled once per artifact coordinates and reused for
+ * every later lookup.
+ */
+public class IgnoreRules
+{
+	private final List<IgnorableDependency> ignorableDependencies;
+
+	private final Map<String, ClassIgnoreMatcher> matchers = new ConcurrentHashMap<>();
+
+	public IgnoreRules(List<IgnorableDependency> ignorableDependencies)
+	{
+		this.ignorableDependencies = ignorableDependencies;
+	}
+
+	public ClassIgnoreMatcher forArtifact(Artifact artifact)
+	{
+		String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+			+ artifact.getType() + ":" + artifact.getClassifier();
+		return matchers.computeIfAbsent(key, k -> compile(artifact));
+	}
+
+	private ClassIgnoreMatcher compile(Artifact artifact)
+	{
+		List<String> ignores = new ArrayList<>();
+		for (IgnorableDependency ignorableDependency : ignorableDependencies)
+		{
+			if (ignorableDependency.matchesArtifact(artifact))
+				ignores.addAll(ignorableDependency.ignores);
+		}
+		return ClassIgnoreMatcher.of(ignores);
+	}
+
+	/**
+	 * Returns the scan depth of the first dependency that matches the artifact and configures
+	 * one, or the given default.
+	 */
+	public ScanDepth getScanDepth(Artifact artifact, ScanDepth defaultDepth)
+	{
+		for (IgnorableDependency ignorableDependency : ignorableDependencies)
+		{
+			if (ignorableDependency.scanDepth != null
+				&& ignorableDependency.matchesArtifact(artifact))
+				return ignorableDependency.scanDepth;
+		}
+		return defaultDepth;
+	}
+
+	/**
+	 * Returns a key that identifies the given dependency configuration, used to share compiled
+	 * rules between executions with the same configuration.
+	 */
+	public static String getConfigurationKey(List<Dependency> dependencies)
+	{
+		StringBuilder ret = new StringBuilder();
+		if (dependencies != null)
+		{
+			for (Dependency dependency : dependencies)
+			{
+				ret.append(dependency.getGroupId())
+					.append('|')
+					.append(dependency.getArtifactId())
+					.append('|')
+					.append(dependency.getType())
+					.append('|')
+					.append(dependency.getClassifier())
+					.append('|')
+					.append(Arrays.toString(dependency.getIgnoreClasses()))
+					.append('|')
+					.append(dependency.getScanDepth())
+					.append('\n');
+			}
+		}
+		return ret.toString();
+	}
+
+	public static class IgnorableDependency
+	{
+		public Pattern groupId;
+
+		public Pattern artifactId;
+
+		public Pattern classifier;
+
+		public Pattern type;
+
+		/**
+		 * The ignored classes as wildcards on JVM internal names.
+		 */
+		public List<String> ignores = new ArrayList<>();
+
+		public ScanDepth scanDepth;
+
+		public boolean matchesArtifact(Artifact dup)
+		{
+			return (artifactId == null || artifactId.matcher(dup.getArtifactId()).matches())
+				&& (groupId == null || groupId.matcher(dup.getGroupId()).matches())
+				&& (classifier == null || classifier
+					.matcher(dup.getClassifier() == null ? "" : dup.getClassifier())
+					.matches())
+				&& (type == null || type.matcher(dup.getType()).matches());
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The verdicts of the previous run, stored in a state file in the build directory. A verdict is
+ * reused when the configuration is the same and the artifact did not change: its size and
+ * modification time are the same, or otherwise its digest is.
+ * <p>
+ * The file starts with a header line containing the configuration hash, followed by a line per
+ * artifact: <code>id, size, modification time, digest, banned classes</code>, separated by tabs,
+ * with the banned classes separated by commas.
+ */
+public class IncrementalState
+{
+	private static final String HEADER = "ban-class-usage-state-1";
+
+	private final Path file;
+
+	private final String configurationHash;
+
+	private final Map<String, Verdict> previous;
+
+	private final Map<String, Verdict> current = new ConcurrentHashMap<>();
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	private IncrementalState(Path file, String configurationHash, Map<String, Verdict> previous)
+	{
+		this.file = file;
+		this.configurationHash = configurationHash;
+		this.previous = previous;
+	}
+
+	/**
+	 * Reads the state file. Verdicts are only read when they were made with the same
+	 * configuration.
+	 */
+	public static IncrementalState load(Path file, String configurationHash) throws IOException
+	{
+		Map<String, Verdict> previous = new HashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			String header = reader.readLine();
+			if ((HEADER + "\t" + configurationHash).equals(header))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					String[] fields = line.split("\t", -1);
+					if (fields.length != 5)
+						continue;
+					Set<String> banned = new TreeSet<>();
+					if (!fields[4].isEmpty())
+						banned.addAll(Arrays.asList(fields[4].split(",")));
+					previous.put(fields[0], new Verdict(Long.parseLong(fields[1]),
+						Long.parseLong(fields[2]), fields[3], banned));
+				}
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			// First run
+		}
+		catch (NumberFormatException e)
+		{
+			// Corrupt state, start over
+			previous.clear();
+		}
+		return new IncrementalState(file, configurationHash, previous);
+	}
+
+	/**
+	 * Returns the banned classes found in the artifact by the previous run, or null when the
+	 * artifact has to be scanned.
+	 */
+	public Set<String> getVerdict(Artifact artifact)
+	{
+		Verdict verdict = previous.get(artifact.getId());
+		File artifactFile = artifact.getFile();
+		if (verdict == null || artifactFile == null || artifactFile.isDirectory()
+			|| verdict.size != artifactFile.length())
+			return null;
+		if (verdict.lastModified != artifactFile.lastModified())
+		{
+			try
+			{
+				if (!verdict.digest.equals(Digests.sha1(artifact)))
+					return null;
+			}
+			catch (IOException e)
+			{
+				return null;
+			}
+		}
+		current.put(artifact.getId(), new Verdict(artifactFile.length(),
+			artifactFile.lastModified(), verdict.digest, verdict.banned));
+		reused.incrementAndGet();
+		return verdict.banned;
+	}
+
+	public void putVerdict(Artifact artifact, Set<String> banned) throws IOException
+	{
+		File artifactFile = artifact.getFile();
+		// Directories keep their own index, see ClassDirectoryScanner
+		if (artifactFile == null || artifactFile.isDirectory()
+			|| current.containsKey(artifact.getId()))
+			return;
+		current.put(artifact.getId(), new Verdict(artifactFile.length(),
+			artifactFile.lastModified(), Digests.sha1(artifact), banned));
+	}
+
+	/**
+	 * Keeps the verdict of the previous run for an artifact that was not checked in this run.
+	 */
+	public void retainVerdict(Artifact artifact)
+	{
+		Verdict verdict = previous.get(artifact.getId());
+		if (verdict != null)
+			current.putIfAbsent(artifact.getId(), verdict);
+	}
+
+	public int getReused()
+	{
+		return reused.get();
+	}
+
+	/**
+	 * Writes the verdicts of this run, replacing the previous state.
+	 */
+	public void save() throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER + "\t" + configurationHash);
+			writer.newLine();
+			for (Map.Entry<String, Verdict> entry : new TreeMap<>(current).entrySet())
+			{
+				Verdict verdict = entry.getValue();
+				writer.write(entry.getKey() + "\t" + verdict.size + "\t" + verdict.lastModified
+					+ "\t" + verdict.digest + "\t" + String.join(",", verdict.banned));
+				writer.newLine();
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static class Verdict
+	{
+		private final long size;
+
+		private final long lastModified;
+
+		private final String digest;
+
+		private final Set<String> banned;
+
+		private Verdict(long size, long lastModified, String digest, Set<String> banned)
+		{
+			this.size = size;
+			this.lastModified = lastModified;
+			this.digest = digest;
+			this.banned = banned;
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the total size of the files that are being read at the same time by parallel scans, so
+ * many large jars do not have to be in memory at once. Sizes are counted in kilobytes, a file
+ * larger than the limit still gets read, but only on its own.
+ */
+public class InflightBytes
+{
+	private final int maxKb;
+
+	private final Semaphore permits;
+
+	public InflightBytes(long maxBytes)
+	{
+		maxKb = (int) Math.max(1, Math.min(Integer.MAX_VALUE, maxBytes / 1024));
+		permits = new Semaphore(maxKb);
+	}
+
+	/**
+	 * Waits until a file of the given size may be read.
+	 *
+	 * @return the permits to pass to {@link #release(int)} once the file has been read
+	 */
+	public int acquire(long bytes) throws InterruptedException
+	{
+		int ret = (int) Math.max(1, Math.min(maxKb, bytes / 1024));
+		permits.acquire(ret);
+		return ret;
+	}
+
+	public void release(int acquired)
+	{
+		permits.release(acquired);
+	}
+}
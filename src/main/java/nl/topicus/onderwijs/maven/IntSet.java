@@ -0,0 +1,143 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of non-negative ints without boxing, using open addressing. Meant to be cleared and
+ * reused, clearing keeps the allocated capacity.
+ */
+public class IntSet
+{
+	private static final int EMPTY = -1;
+
+	private int[] slots;
+
+	private int[] values;
+
+	private int size;
+
+	public IntSet()
+	{
+		this(16);
+	}
+
+	public IntSet(int expectedSize)
+	{
+		int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+		slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		values = new int[capacity / 2];
+	}
+
+	/**
+	 * @return true when the value was not in the set yet
+	 */
+	public boolean add(int value)
+	{
+		int mask = slots.length - 1;
+		int slot = mix(value) & mask;
+		while (slots[slot] != EMPTY)
+		{
+			if (slots[slot] == value)
+				return false;
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = value;
+		values[size++] = value;
+		if (size == values.length)
+			grow();
+		return true;
+	}
+
+	public void addAll(IntSet other)
+	{
+		for (int index = 0; index < other.size; index++)
+		{
+			add(other.values[index]);
+		}
+	}
+
+	public boolean contains(int value)
+	{
+		int mask = slots.length - 1;
+		int slot = mix(value) & mask;
+		while (slots[slot] != EMPTY)
+		{
+			if (slots[slot] == value)
+				return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Returns the value at the given index, values are kept in insertion order.
+	 */
+	public int get(int index)
+	{
+		return values[index];
+	}
+
+	public void forEach(IntConsumer consumer)
+	{
+		for (int index = 0; index < size; index++)
+		{
+			consumer.accept(values[index]);
+		}
+	}
+
+	public void clear()
+	{
+		if (size == 0)
+			return;
+		if (size < slots.length / 8)
+		{
+			// Cheaper to remove the few values than to wipe all slots. The search does not stop
+			// at empty slots, as the earlier removals break the probe chains.
+			int mask = slots.length - 1;
+			for (int index = 0; index < size; index++)
+			{
+				int slot = mix(values[index]) & mask;
+				while (slots[slot] != values[index])
+					slot = (slot + 1) & mask;
+				slots[slot] = EMPTY;
+			}
+		}
+		else
+		{
+			Arrays.fill(slots, EMPTY);
+		}
+		size = 0;
+	}
+
+	private void grow()
+	{
+		int[] oldValues = values;
+		int oldSize = size;
+		slots = new int[slots.length * 2];
+		Arrays.fill(slots, EMPTY);
+		values = new int[values.length * 2];
+		size = 0;
+		for (int index = 0; index < oldSize; index++)
+		{
+			add(oldValues[index]);
+		}
+	}
+
+	private static int mix(int value)
+	{
+		int hash = value * 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,571 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the entries of a jar using the central directory directly. Unlike
+ * {@link java.util.jar.JarFile} it does not verify signatures and does not allocate an object per
+ * entry. The central directory is read into memory once, and entries are read with positional
+ * reads from the file, which is not mapped, so closing the reader releases the file right away.
+ * Mapped files stay locked until the mapping is garbage collected, which keeps
+ * <code>mvn clean</code> from deleting them on Windows and in long running processes.
+ * <p>
+ * Entries are inflated into a buffer and {@link Inflater} that are reused by all jars read on the
+ * same thread. Archives nested in an archive, such as the jars in a war, are read from the outer
+ * archive without extracting them to disk, see {@link Entry#openArchive()}.
+ * <p>
+ * The entries are read up to the end of the central directory, rather than up to the number of
+ * entries in the end of central directory record, which only has 16 bits and overflows in large
+ * archives written without a zip64 record. Bytes before the archive, such as a launch script,
+ * are skipped the way {@link java.util.zip.ZipFile} does.
+ */
+public class JarReader implements Closeable
+{
+	private static final int LOCAL_HEADER = 0x04034b50;
+
+	private static final int CENTRAL_HEADER = 0x02014b50;
+
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+
+	private static final int STORED = 0;
+
+	private static final int DEFLATED = 8;
+
+	/**
+	 * Bytes read beyond the local header in the same read as the header, for the extra field.
+	 */
+	private static final int LOCAL_EXTRA_ALLOWANCE = 64;
+
+	private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+	/**
+	 * The path of the archive, for messages.
+	 */
+	private final String path;
+
+	/**
+	 * The channel the archive is read from, null for a nested archive that was inflated into
+	 * memory.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Whether the channel is closed with the archive, false for a nested archive.
+	 */
+	private final boolean ownsChannel;
+
+	/**
+	 * The position of the archive in the channel.
+	 */
+	private final long start;
+
+	/**
+	 * The contents of a nested archive that was inflated into memory, null otherwise.
+	 */
+	private final ByteBuffer contents;
+
+	private final long length;
+
+	private ByteBuffer directory;
+
+	/**
+	 * The number of bytes before the archive, which the offsets in the archive do not include.
+	 */
+	private long prefix;
+
+	public JarReader(File file) throws IOException
+	{
+		this.path = file.getPath();
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		this.ownsChannel = true;
+		this.start = 0;
+		this.contents = null;
+		try
+		{
+			this.length = channel.size();
+			readCentralDirectory();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	private JarReader(String path, FileChannel channel, long start, long length)
+			throws IOException
+	{
+		this.path = path;
+		this.channel = channel;
+		this.ownsChannel = false;
+		this.start = start;
+		this.contents = null;
+		this.length = length;
+		readCentralDirectory();
+	}
+
+	private JarReader(String path, ByteBuffer contents) throws IOException
+	{
+		this.path = path;
+		this.channel = null;
+		this.ownsChannel = false;
+		this.start = 0;
+		this.contents = contents;
+		this.length = contents.remaining();
+		readCentralDirectory();
+	}
+
+	/**
+	 * @return the path of the archive, with <code>!/</code> between the path of an outer archive
+	 *         and the name of a nested archive
+	 */
+	public String getPath()
+	{
+		return path;
+	}
+
+	/**
+	 * Reads the given range of the archive into the array.
+	 */
+	private void read(long position, byte[] target, int offset, int count) throws IOException
+	{
+		if (position < 0 || count < 0 || position + count > length)
+			throw new ZipException("Invalid offset " + position + " in " + path);
+		if (contents != null)
+		{
+			ByteBuffer source = contents.duplicate();
+			source.position(source.position() + (int) position);
+			source.get(target, offset, count);
+			return;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(target, offset, count);
+		while (buffer.hasRemaining())
+		{
+			if (channel.read(buffer, start + position + buffer.position() - offset) < 0)
+				throw new EOFException("Unexpected end of " + path);
+		}
+	}
+
+	private ByteBuffer read(long position, int count) throws IOException
+	{
+		byte[] ret = new byte[count];
+		read(position, ret, 0, count);
+		return ByteBuffer.wrap(ret).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private void readCentralDirectory() throws IOException
+	{
+		// The end of central directory record is 22 bytes, followed by a comment of at most 64KB
+		int tailLength = (int) Math.min(length, 22 + 0xFFFF);
+		long tailStart = length - tailLength;
+		ByteBuffer tail = read(tailStart, tailLength);
+		int end = -1;
+		for (int pos = tailLength - 22; pos >= 0; pos--)
+		{
+			// The signature may occur in the comment, the comment has to end the archive as well
+			if (tail.getInt(pos) == END_OF_CENTRAL_DIRECTORY
+				&& pos + 22 + (tail.getShort(pos + 20) & 0xFFFF) == tailLength)
+			{
+				end = pos;
+				break;
+			}
+		}
+		if (end < 0)
+			throw new ZipException("No central directory found in " + path);
+
+		long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+		long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+		long endPosition = tailStart + end;
+		ByteBuffer locator = endPosition >= 20 ? read(endPosition - 20, 20) : null;
+		if (locator != null && locator.getInt(0) == ZIP64_LOCATOR)
+		{
+			long zip64End = locator.getLong(8);
+			// The offset in the locator does not include the bytes before the archive, while the
+			// record is written right before the locator
+			if (!isZip64End(zip64End))
+				zip64End = endPosition - 20 - 56;
+			if (!isZip64End(zip64End))
+				throw new ZipException("Invalid zip64 end of central directory in " + path);
+			ByteBuffer record = read(zip64End, 56);
+			directorySize = record.getLong(40);
+			directoryOffset = record.getLong(48);
+			endPosition = zip64End;
+		}
+		// Bytes before the archive, such as the launch script of an executable Spring Boot jar,
+		// are not included in the offsets in the archive
+		prefix = endPosition - directorySize - directoryOffset;
+		if (prefix < 0 || directoryOffset < 0)
+			throw new ZipException("Invalid central directory offset in " + path);
+		if (directorySize > Integer.MAX_VALUE)
+			throw new ZipException("Central directories larger than 2GB are not supported: "
+				+ path);
+		directory = read(prefix + directoryOffset, (int) directorySize);
+	}
+
+	private boolean isZip64End(long position) throws IOException
+	{
+		return position >= 0 && position + 56 <= length
+			&& read(position, 4).getInt(0) == ZIP64_END_OF_CENTRAL_DIRECTORY;
+	}
+
+	/**
+	 * Calls the consumer for every entry in the central directory. The same {@link Entry}
+	 * instance is passed for every entry, so it must not be kept after the call.
+	 */
+	public void forEachEntry(EntryConsumer consumer) throws IOException
+	{
+		Entry entry = new Entry();
+		int pos = 0;
+		while (pos < directory.limit())
+		{
+			pos = readHeader(entry, pos);
+			consumer.accept(entry);
+		}
+	}
+
+	/**
+	 * Returns the entry with the given header offset, see {@link Entry#getHeaderOffset()}.
+	 */
+	public Entry getEntry(int headerOffset) throws IOException
+	{
+		Entry ret = new Entry();
+		readHeader(ret, headerOffset);
+		return ret;
+	}
+
+	/**
+	 * Reads the central directory header at the position into the entry.
+	 *
+	 * @return the position of the next header
+	 */
+	private int readHeader(Entry entry, int pos) throws ZipException
+	{
+		if (pos < 0 || pos + 46 > directory.limit() || directory.getInt(pos) != CENTRAL_HEADER)
+			throw new ZipException("Invalid central directory header in " + path);
+		entry.headerOffset = pos;
+		entry.method = directory.getShort(pos + 10) & 0xFFFF;
+		entry.crc = directory.getInt(pos + 16) & 0xFFFFFFFFL;
+		entry.compressedSize = directory.getInt(pos + 20) & 0xFFFFFFFFL;
+		entry.size = directory.getInt(pos + 24) & 0xFFFFFFFFL;
+		int nameLength = directory.getShort(pos + 28) & 0xFFFF;
+		int extraLength = directory.getShort(pos + 30) & 0xFFFF;
+		int commentLength = directory.getShort(pos + 32) & 0xFFFF;
+		int next = pos + 46 + nameLength + extraLength + commentLength;
+		if (next > directory.limit())
+			throw new ZipException("Truncated central directory header in " + path);
+		entry.localHeaderOffset = directory.getInt(pos + 42) & 0xFFFFFFFFL;
+		entry.nameOffset = pos + 46;
+		entry.nameLength = nameLength;
+		entry.name = null;
+		readZip64Extra(entry, pos + 46 + nameLength, extraLength);
+		entry.localHeaderOffset += prefix;
+		return next;
+	}
+
+	private void readZip64Extra(Entry entry, int pos, int length)
+	{
+		int end = pos + length;
+		while (pos + 4 <= end)
+		{
+			int id = directory.getShort(pos) & 0xFFFF;
+			int size = directory.getShort(pos + 2) & 0xFFFF;
+			if (id == 0x0001)
+			{
+				// Only the fields that are 0xFFFFFFFF in the header are present, in this order
+				int field = pos + 4;
+				if (entry.size == 0xFFFFFFFFL)
+				{
+					entry.size = directory.getLong(field);
+					field += 8;
+				}
+				if (entry.compressedSize == 0xFFFFFFFFL)
+				{
+					entry.compressedSize = directory.getLong(field);
+					field += 8;
+				}
+				if (entry.localHeaderOffset == 0xFFFFFFFFL)
+				{
+					entry.localHeaderOffset = directory.getLong(field);
+				}
+				return;
+			}
+			pos += 4 + size;
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if (ownsChannel)
+			channel.close();
+	}
+
+	@FunctionalInterface
+	public interface EntryConsumer
+	{
+		void accept(Entry entry) throws IOException;
+	}
+
+	public final class Entry
+	{
+		private int headerOffset;
+
+		private int method;
+
+		private long crc;
+
+		private long compressedSize;
+
+		private long size;
+
+		private long localHeaderOffset;
+
+		private int nameOffset;
+
+		private int nameLength;
+
+		private String name;
+
+		private Entry()
+		{
+		}
+
+		public String getName()
+		{
+			if (name == null)
+			{
+				byte[] bytes = new byte[nameLength];
+				directory.duplicate().position(nameOffset).get(bytes);
+				name = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return name;
+		}
+
+		public boolean isDirectory()
+		{
+			return nameLength > 0 && directory.get(nameOffset + nameLength - 1) == '/';
+		}
+
+		/**
+		 * @return true when the name ends with <code>.class</code>, without decoding the name
+		 */
+		public boolean isClass()
+		{
+			return nameEndsWith(".class");
+		}
+
+		public boolean nameEndsWith(String suffix)
+		{
+			if (nameLength < suffix.length())
+				return false;
+			int start = nameOffset + nameLength - suffix.length();
+			for (int index = 0; index < suffix.length(); index++)
+			{
+				if (directory.get(start + index) != suffix.charAt(index))
+					return false;
+			}
+			return true;
+		}
+
+		public boolean nameStartsWith(String prefix)
+		{
+			if (nameLength < prefix.length())
+				return false;
+			for (int index = 0; index < prefix.length(); index++)
+			{
+				if (directory.get(nameOffset + index) != prefix.charAt(index))
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return the offset of the central directory header of the entry, which identifies the
+		 *         entry within the archive
+		 */
+		public int getHeaderOffset()
+		{
+			return headerOffset;
+		}
+
+		public long getCrc()
+		{
+			return crc;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+
+		public long getCompressedSize()
+		{
+			return compressedSize;
+		}
+
+		/**
+		 * Reads the uncompressed contents of the entry into a buffer that is shared by all reads
+		 * on the current thread. The contents are in the first {@link #getSize()} bytes and are
+		 * only valid until the next read on the same thread.
+		 */
+		public byte[] read() throws IOException
+		{
+			return read(BUFFERS.get().ensureCapacity(checkSize()));
+		}
+
+		/**
+		 * Opens the entry as an archive. A stored entry, as used by Spring Boot, is read in place
+		 * from the outer archive. A compressed entry is inflated into memory.
+		 */
+		public JarReader openArchive() throws IOException
+		{
+			String nestedPath = path + "!/" + getName();
+			if (method == STORED)
+			{
+				long dataOffset = getDataOffset();
+				if (contents == null)
+					return new JarReader(nestedPath, channel, start + dataOffset, compressedSize);
+				ByteBuffer nested = contents.duplicate();
+				nested.position(nested.position() + (int) dataOffset);
+				nested.limit(nested.position() + (int) compressedSize);
+				return new JarReader(nestedPath, nested.slice());
+			}
+			return new JarReader(nestedPath, ByteBuffer.wrap(read(new byte[checkSize()])));
+		}
+
+		private int checkSize() throws ZipException
+		{
+			if (size > Integer.MAX_VALUE - 8 || compressedSize > Integer.MAX_VALUE - 8)
+				throw new ZipException("Entry too large: " + getName());
+			return (int) size;
+		}
+
+		private long getDataOffset() throws IOException
+		{
+			ByteBuffer header = JarReader.this.read(localHeaderOffset, 30);
+			if (header.getInt(0) != LOCAL_HEADER)
+				throw new ZipException("Invalid local header for " + getName() + " in " + path);
+			return localHeaderOffset + 30 + (header.getShort(26) & 0xFFFF)
+				+ (header.getShort(28) & 0xFFFF);
+		}
+
+		/**
+		 * Returns the compressed contents of the entry, read together with the local header when
+		 * the archive is read from a file.
+		 */
+		private ByteBuffer getCompressed() throws IOException
+		{
+			if (contents != null)
+			{
+				int dataOffset = (int) getDataOffset();
+				ByteBuffer ret = contents.duplicate();
+				ret.position(ret.position() + dataOffset);
+				ret.limit(ret.position() + (int) compressedSize);
+				return ret;
+			}
+			Buffers buffers = BUFFERS.get();
+			// The local name is the same as the central one, the extra field may differ
+			int guess = 30 + nameLength + LOCAL_EXTRA_ALLOWANCE + (int) compressedSize;
+			int count = (int) Math.min(guess, length - localHeaderOffset);
+			byte[] buffer = buffers.ensureCompressedCapacity(count);
+			JarReader.this.read(localHeaderOffset, buffer, 0, count);
+			ByteBuffer header = ByteBuffer.wrap(buffer, 0, count).order(ByteOrder.LITTLE_ENDIAN);
+			if (count < 30 || header.getInt(0) != LOCAL_HEADER)
+				throw new ZipException("Invalid local header for " + getName() + " in " + path);
+			int dataOffset =
+				30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+			long needed = dataOffset + compressedSize;
+			if (needed > count)
+			{
+				if (needed > Integer.MAX_VALUE - 8)
+					throw new ZipException("Entry too large: " + getName());
+				buffer = buffers.ensureCompressedCapacity((int) needed);
+				JarReader.this.read(localHeaderOffset + count, buffer, count,
+					(int) needed - count);
+			}
+			return ByteBuffer.wrap(buffer, dataOffset, (int) compressedSize);
+		}
+
+		private byte[] read(byte[] data) throws IOException
+		{
+			ByteBuffer compressed = getCompressed();
+			if (method == STORED)
+			{
+				if (compressedSize != size)
+					throw new ZipException("Invalid size of stored entry " + getName());
+				compressed.get(data, 0, (int) size);
+			}
+			else if (method == DEFLATED)
+			{
+				Inflater inflater = BUFFERS.get().inflater;
+				inflater.reset();
+				inflater.setInput(compressed);
+				try
+				{
+					int read = 0;
+					while (read < size)
+					{
+						int inflated = inflater.inflate(data, read, (int) size - read);
+						if (inflated == 0 && (inflater.needsInput() || inflater.finished()))
+							throw new ZipException("Truncated entry " + getName() + " in " + path);
+						read += inflated;
+					}
+				}
+				catch (DataFormatException e)
+				{
+					throw new ZipException(
+						"Invalid compressed data for " + getName() + " in " + path + ": "
+							+ e.getMessage());
+				}
+			}
+			else
+			{
+				throw new ZipException(
+					"Unsupported compression method " + method + " for " + getName());
+			}
+			return data;
+		}
+	}
+
+	private static class Buffers
+	{
+		private final Inflater inflater = new Inflater(true);
+
+		private byte[] data = new byte[64 * 1024];
+
+		private byte[] compressed = new byte[64 * 1024];
+
+		private byte[] ensureCapacity(int size)
+		{
+			if (data.length < size)
+				data = new byte[Math.max(size, data.length * 2)];
+			return data;
+		}
+
+		/**
+		 * Grows the buffer for compressed data, keeping its contents.
+		 */
+		private byte[] ensureCompressedCapacity(int size)
+		{
+			if (compressed.length < size)
+				compressed = Arrays.copyOf(compressed, Math.max(size, compressed.length * 2));
+			return compressed;
+		}
+	}
+}
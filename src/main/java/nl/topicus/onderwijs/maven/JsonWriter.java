@@ -0,0 +1,162 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Writes JSON to a writer as it goes, so large reports are never held in memory. Objects are
+ * written with a member per line.
+ */
+public class JsonWriter implements Closeable
+{
+	private final Writer writer;
+
+	/**
+	 * Whether the object or array at each level already has a member.
+	 */
+	private final Deque<Boolean> hasMembers = new ArrayDeque<>();
+
+	private boolean afterName;
+
+	public JsonWriter(Writer writer)
+	{
+		this.writer = writer;
+	}
+
+	public JsonWriter beginObject() throws IOException
+	{
+		return open('{');
+	}
+
+	public JsonWriter endObject() throws IOException
+	{
+		return close('}');
+	}
+
+	public JsonWriter beginArray() throws IOException
+	{
+		return open('[');
+	}
+
+	public JsonWriter endArray() throws IOException
+	{
+		return close(']');
+	}
+
+	public JsonWriter name(String name) throws IOException
+	{
+		separate();
+		writeString(name);
+		writer.write(": ");
+		afterName = true;
+		return this;
+	}
+
+	public JsonWriter value(String value) throws IOException
+	{
+		separate();
+		if (value == null)
+			writer.write("null");
+		else
+			writeString(value);
+		return this;
+	}
+
+	public JsonWriter value(long value) throws IOException
+	{
+		separate();
+		writer.write(Long.toString(value));
+		return this;
+	}
+
+	public JsonWriter value(boolean value) throws IOException
+	{
+		separate();
+		writer.write(Boolean.toString(value));
+		return this;
+	}
+
+	private JsonWriter open(char bracket) throws IOException
+	{
+		separate();
+		writer.write(bracket);
+		hasMembers.push(Boolean.FALSE);
+		return this;
+	}
+
+	private JsonWriter close(char bracket) throws IOException
+	{
+		if (hasMembers.pop())
+			newLine();
+		writer.write(bracket);
+		return this;
+	}
+
+	private void separate() throws IOException
+	{
+		if (afterName)
+		{
+			afterName = false;
+			return;
+		}
+		if (hasMembers.isEmpty())
+			return;
+		if (hasMembers.pop())
+			writer.write(',');
+		hasMembers.push(Boolean.TRUE);
+		newLine();
+	}
+
+	private void newLine() throws IOException
+	{
+		writer.write('\n');
+		for (int level = 0; level < hasMembers.size(); level++)
+		{
+			writer.write('\t');
+		}
+	}
+
+	private void writeString(String value) throws IOException
+	{
+		writer.write('"');
+		for (int index = 0; index < value.length(); index++)
+		{
+			char character = value.charAt(index);
+			switch (character)
+			{
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					if (character < 0x20)
+						writer.write(String.format("\\u%04x", (int) character));
+					else
+						writer.write(character);
+					break;
+			}
+		}
+		writer.write('"');
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		writer.write('\n');
+		writer.close();
+	}
+}
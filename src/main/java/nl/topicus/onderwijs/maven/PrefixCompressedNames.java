@@ -0,0 +1,67 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes and reads a set of class names, sorted, with the prefix each name shares with the
+ * previous name stripped. Internal names share long package prefixes, which keeps the names of a
+ * jar small. Used by {@link ClassReferenceCache} and {@link ClassReferencesFile}.
+ * <p>
+ * The number of names is written as an int, followed by a record per name: the length of the
+ * prefix it shares with the previous name as an unsigned short, and the rest of the name in
+ * modified UTF-8.
+ */
+public final class PrefixCompressedNames
+{
+	private PrefixCompressedNames()
+	{
+	}
+
+	public static void write(DataOutput out, Collection<String> names) throws IOException
+	{
+		Set<String> sorted = new TreeSet<>(names);
+		out.writeInt(sorted.size());
+		String previous = "";
+		for (String name : sorted)
+		{
+			int prefix = 0;
+			int max = Math.min(Math.min(previous.length(), name.length()), 0xFFFF);
+			while (prefix < max && previous.charAt(prefix) == name.charAt(prefix))
+			{
+				prefix++;
+			}
+			out.writeShort(prefix);
+			out.writeUTF(name.substring(prefix));
+			previous = name;
+		}
+	}
+
+	/**
+	 * @throws StreamCorruptedException
+	 *             when the data is not a set of names written by {@link #write}
+	 */
+	public static Set<String> read(DataInput in) throws IOException
+	{
+		int count = in.readInt();
+		if (count < 0)
+			throw new StreamCorruptedException("Invalid number of names " + count);
+		Set<String> ret = new HashSet<>(Math.min(count, 1 << 16) * 2);
+		String previous = "";
+		for (int index = 0; index < count; index++)
+		{
+			int prefix = in.readUnsignedShort();
+			if (prefix > previous.length())
+				throw new StreamCorruptedException("Invalid prefix length " + prefix);
+			previous = previous.substring(0, prefix) + in.readUTF();
+			ret.add(previous);
+		}
+		return ret;
+	}
+}
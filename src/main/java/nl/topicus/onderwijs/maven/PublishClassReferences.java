@@ -0,0 +1,128 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.apache.maven.enforcer.rule.api.AbstractEnforcerRule;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+/**
+ * Attaches the classes referenced by the classes in the output directory of the project as a
+ * <code>classrefs</code> artifact, see {@link ClassReferencesFile}, so projects that use the
+ * library can check it with {@link BanClassUsage} without scanning its jar. Bind the execution to
+ * the package phase, after the jar is built, so the file is installed and deployed together with
+ * the jar.
+ * <p>
+ * The output directory is scanned rather than the jar, so the rule refuses to attach the file
+ * when the jar has classes that are not in the output directory, or that differ from them, such as
+ * classes shaded into the jar or woven after compiling. The file only describes the main jar of
+ * the project, not the jars attached with a classifier, and holds its SHA-1, so it is not used
+ * when the jar is replaced later in the build.
+ */
+@Named("publishClassReferences")
+public class PublishClassReferences extends AbstractEnforcerRule
+{
+	/**
+	 * The engine used to collect the referenced classes, either ASM (the default) or
+	 * CONSTANT_POOL.
+	 */
+	private ScanEngine engine = ScanEngine.ASM;
+
+	private MavenSession session;
+
+	private MavenProjectHelper projectHelper;
+
+	@Inject
+	public PublishClassReferences(MavenSession session, MavenProjectHelper projectHelper)
+	{
+		this.session = session;
+		this.projectHelper = projectHelper;
+	}
+
+	@Override
+	public void execute() throws EnforcerRuleException
+	{
+		MavenProject project = session.getCurrentProject();
+		File outputDirectory = new File(project.getBuild().getOutputDirectory());
+		if (!outputDirectory.isDirectory())
+		{
+			getLog().warn("Not attaching the class references, " + outputDirectory
+				+ " does not exist");
+			return;
+		}
+		File jar = project.getArtifact().getFile();
+		if (jar == null || !jar.isFile() || !jar.getName().endsWith(".jar"))
+		{
+			getLog().warn("Not attaching the class references, the jar of the project has not "
+				+ "been built, bind the execution to the package phase after the jar plugin");
+			return;
+		}
+		checkJar(jar, outputDirectory.toPath());
+		Path file = Paths.get(project.getBuild().getDirectory(), project.getBuild().getFinalName()
+			+ "-" + ClassReferencesFile.CLASSIFIER + "." + ClassReferencesFile.CLASSIFIER);
+		try
+		{
+			// A full scan of every class, so the file can be used for any banned classes
+			Set<String> referencedClasses =
+				new ClassDirectoryScanner(engine, ScanDepth.FULL, null, "classrefs", getLog())
+					.scan(outputDirectory.toPath(), null);
+			ClassReferencesFile.write(file, Digests.sha1(jar), referencedClasses);
+			getLog().info("Attaching " + file + " with " + referencedClasses.size()
+				+ " referenced classes");
+		}
+		catch (IOException e)
+		{
+			throw new EnforcerRuleException("IOException while writing " + file, e);
+		}
+		projectHelper.attachArtifact(project, ClassReferencesFile.CLASSIFIER,
+			ClassReferencesFile.CLASSIFIER, file.toFile());
+	}
+
+	/**
+	 * Checks that every class in the jar is in the output directory with the same contents, so the
+	 * references found in the output directory are the references of the jar.
+	 */
+	static void checkJar(File jar, Path outputDirectory) throws EnforcerRuleException
+	{
+		List<String> differences = new ArrayList<>();
+		try (JarReader reader = new JarReader(jar))
+		{
+			reader.forEachEntry(entry -> {
+				if (!entry.isClass())
+					return;
+				Path classFile = outputDirectory.resolve(entry.getName());
+				if (!Files.isRegularFile(classFile) || Files.size(classFile) != entry.getSize()
+					|| getCrc(classFile) != entry.getCrc())
+					differences.add(entry.getName());
+			});
+		}
+		catch (IOException e)
+		{
+			throw new EnforcerRuleException("IOException while reading " + jar, e);
+		}
+		if (!differences.isEmpty())
+			throw new EnforcerRuleException("Not attaching the class references, "
+				+ differences.size() + " classes in " + jar + " are not in " + outputDirectory
+				+ " or differ from it, such as " + differences.get(0));
+	}
+
+	private static long getCrc(Path file) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		crc.update(Files.readAllBytes(file));
+		return crc.getValue();
+	}
+}
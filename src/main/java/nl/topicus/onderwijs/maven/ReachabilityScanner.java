@@ -0,0 +1,310 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * Finds the banned classes that are reachable from the classes of a root entry, such as the
+ * output directory of the project, by only parsing the classes of the other entries that are
+ * transitively referenced by the root classes. Each entry is a jar or a directory of class files.
+ * <p>
+ * The classes are located through an index of class names, built from the central directories of
+ * the jars and the file names in the directories, so no class file is read before it is reached.
+ * A class in several entries is taken from the first entry that contains it, like a class loader
+ * would. Only the base version of multi-release jars is indexed, and archives nested in a jar are
+ * not followed. Classes that are not in any entry, such as the classes of the JDK, are not
+ * followed either.
+ */
+public class ReachabilityScanner implements Closeable
+{
+	private static final int NOT_REACHED = -2;
+
+	private static final int ROOT = -1;
+
+	/**
+	 * Receives the banned classes that are reachable from the root classes.
+	 */
+	@FunctionalInterface
+	public interface Listener
+	{
+		/**
+		 * Called once per entry and banned class that a reachable class of the entry references.
+		 *
+		 * @param chain
+		 *            the binary names of the classes from a root class to the class that
+		 *            references the banned class
+		 */
+		void violation(int entry, String className, List<String> chain);
+	}
+
+	private final ScanEngine engine;
+
+	private final EnforcerLogger log;
+
+	private final SymbolTable symbols = new SymbolTable();
+
+	private final List<ScanEntry> entries = new ArrayList<>();
+
+	/**
+	 * The location of each class by id: the entry + 1 in the upper half, and the header offset in
+	 * a jar in the lower half. 0 when the class is not in any entry.
+	 */
+	private long[] locations = new long[1024];
+
+	private FailFast failFast;
+
+	private int classesIndexed;
+
+	private int classesParsed;
+
+	private int classesNotFound;
+
+	public ReachabilityScanner(ScanEngine engine, EnforcerLogger log)
+	{
+		this.engine = engine;
+		this.log = log;
+	}
+
+	/**
+	 * Stops the scan once enough violations have been found.
+	 */
+	public void setFailFast(FailFast failFast)
+	{
+		this.failFast = failFast;
+	}
+
+	/**
+	 * Adds a jar or a directory of class files, and indexes the classes in it.
+	 *
+	 * @param isViolation
+	 *            whether a class referenced by a class in this entry is a violation
+	 * @return the id of the entry
+	 */
+	public int addEntry(File file, ScanDepth depth, Predicate<String> isViolation)
+			throws IOException
+	{
+		int id = entries.size();
+		ScanEntry entry = new ScanEntry(file, depth, isViolation);
+		entries.add(entry);
+		if (file.isDirectory())
+		{
+			Path directory = file.toPath();
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.filter(path -> path.toString().endsWith(".class")).forEach(path -> {
+					String name = directory.relativize(path).toString().replace(File.separatorChar,
+						'/');
+					index(name, name.length() - ".class".length(), id, 0);
+				});
+			}
+		}
+		else
+		{
+			entry.jarFile = new JarReader(file);
+			entry.jarFile.forEachEntry(jarEntry -> {
+				if (jarEntry.isClass() && !jarEntry.nameStartsWith("META-INF/"))
+				{
+					String name = jarEntry.getName();
+					index(name, name.length() - ".class".length(), id,
+						jarEntry.getHeaderOffset());
+				}
+			});
+		}
+		return id;
+	}
+
+	private void index(String name, int end, int entry, int headerOffset)
+	{
+		int id = symbols.intern(name, 0, end);
+		if (id >= locations.length)
+			locations = Arrays.copyOf(locations, Math.max(id + 1, locations.length * 2));
+		if (locations[id] == 0)
+		{
+			locations[id] = (long) (entry + 1) << 32 | headerOffset & 0xFFFFFFFFL;
+			classesIndexed++;
+		}
+	}
+
+	/**
+	 * Parses the classes reachable from the classes of the root entry, and reports the banned
+	 * classes they reference.
+	 */
+	public void scan(int rootEntry, Listener listener)
+	{
+		// The visited set is the queue as well, in the order the classes were reached
+		IntSet visited = new IntSet(Math.max(16, classesIndexed));
+		int[] reachedFrom = new int[locations.length];
+		Arrays.fill(reachedFrom, NOT_REACHED);
+		for (int id = 0; id < symbols.size(); id++)
+		{
+			if (getEntry(id) == rootEntry)
+			{
+				visited.add(id);
+				reachedFrom[id] = ROOT;
+			}
+		}
+
+		IntSet classDeps = new IntSet();
+		Map<ScanDepth, ScanEngine.Collector> collectors = new EnumMap<>(ScanDepth.class);
+		Set<Long> reported = new HashSet<>();
+		for (int next = 0; next < visited.size(); next++)
+		{
+			if (failFast != null && failFast.isStopped())
+			{
+				log.debug("Stopped the reachability scan, enough banned classes were found");
+				return;
+			}
+			int classId = visited.get(next);
+			int entryId = getEntry(classId);
+			ScanEntry entry = entries.get(entryId);
+			classDeps.clear();
+			try
+			{
+				ScanEngine.Collector collector = collectors.computeIfAbsent(entry.depth,
+					depth -> engine.newCollector(symbols, classDeps, depth));
+				if (entry.jarFile == null)
+				{
+					byte[] classFile = Files.readAllBytes(
+						entry.file.toPath().resolve(symbols.getName(classId) + ".class"));
+					collector.collect(classFile, 0, classFile.length);
+				}
+				else
+				{
+					// The buffer is shared by all reads on this thread, only the start is the class
+					JarReader.Entry jarEntry = entry.jarFile.getEntry((int) locations[classId]);
+					collector.collect(jarEntry.read(), 0, (int) jarEntry.getSize());
+				}
+				classesParsed++;
+				entry.classesParsed++;
+			}
+			catch (Exception e)
+			{
+				log.warn("Skipping " + symbols.getName(classId) + " in " + entry.file + " due to "
+					+ e.getMessage());
+				continue;
+			}
+
+			for (int index = 0; index < classDeps.size(); index++)
+			{
+				int dep = classDeps.get(index);
+				String name = symbols.getName(dep);
+				if (entry.isViolation.test(name) && reported.add((long) entryId << 32 | dep))
+				{
+					listener.violation(entryId, name, getChain(classId, reachedFrom));
+					if (failFast != null)
+						failFast.addViolations(1);
+				}
+				if (dep >= reachedFrom.length)
+				{
+					int length = reachedFrom.length;
+					reachedFrom = Arrays.copyOf(reachedFrom, Math.max(dep + 1, length * 2));
+					Arrays.fill(reachedFrom, length, reachedFrom.length, NOT_REACHED);
+				}
+				if (reachedFrom[dep] != NOT_REACHED)
+					continue;
+				if (getEntry(dep) < 0)
+				{
+					// Mark it, so it is only counted once
+					reachedFrom[dep] = classId;
+					classesNotFound++;
+					continue;
+				}
+				reachedFrom[dep] = classId;
+				visited.add(dep);
+			}
+		}
+	}
+
+	private int getEntry(int classId)
+	{
+		return classId < locations.length ? (int) (locations[classId] >>> 32) - 1 : -1;
+	}
+
+	private List<String> getChain(int classId, int[] reachedFrom)
+	{
+		List<String> ret = new ArrayList<>();
+		for (int id = classId; id != ROOT; id = reachedFrom[id])
+		{
+			ret.add(symbols.getName(id).replace('/', '.'));
+		}
+		Collections.reverse(ret);
+		return ret;
+	}
+
+	/**
+	 * @return the number of classes in all entries
+	 */
+	public int getClassesIndexed()
+	{
+		return classesIndexed;
+	}
+
+	/**
+	 * @return the number of reachable classes that were parsed
+	 */
+	public int getClassesParsed()
+	{
+		return classesParsed;
+	}
+
+	/**
+	 * @return the number of reachable classes that were parsed in the given entry
+	 */
+	public int getClassesParsed(int entry)
+	{
+		return entries.get(entry).classesParsed;
+	}
+
+	/**
+	 * @return the number of referenced classes that are not in any entry
+	 */
+	public int getClassesNotFound()
+	{
+		return classesNotFound;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		for (ScanEntry entry : entries)
+		{
+			if (entry.jarFile != null)
+				entry.jarFile.close();
+		}
+	}
+
+	private static final class ScanEntry
+	{
+		private final File file;
+
+		private final ScanDepth depth;
+
+		private final Predicate<String> isViolation;
+
+		private JarReader jarFile;
+
+		private int classesParsed;
+
+		private ScanEntry(File file, ScanDepth depth, Predicate<String> isViolation)
+		{
+			this.file = file;
+			this.depth = depth;
+			this.isViolation = isViolation;
+		}
+	}
+}
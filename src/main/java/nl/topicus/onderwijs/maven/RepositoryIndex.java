@@ -0,0 +1,584 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * An inverted index of the jars in a local repository: for every referenced class, the jars that
+ * reference it. The index is a single file that is read with positional reads, so a query only
+ * reads the part of the index it needs, and answers which jars reference a package without
+ * parsing any jar. The file is not memory mapped, a mapping would keep it locked on Windows
+ * until the mapping is garbage collected, so it could not be replaced by the next update.
+ * <p>
+ * The index is updated incrementally: only the jars that are new or changed since the previous
+ * update are scanned, the references of the other jars are copied from the previous index.
+ * <p>
+ * The file starts with a header, the repository directory and a table of the indexed jars, with
+ * their path relative to the repository, size and modification time. The classes follow, sorted
+ * by their UTF-8 bytes: a table of offsets of their names, a table of offsets of their postings,
+ * the names and finally the postings, the ids of the jars that reference each class. All numbers
+ * are big-endian.
+ */
+public class RepositoryIndex implements Closeable
+{
+	private static final int MAGIC = 0x42435549;
+
+	private static final int VERSION = 1;
+
+	private final Path indexFile;
+
+	private final FileChannel channel;
+
+	private final String repository;
+
+	private final String[] jarPaths;
+
+	private final long[] jarSizes;
+
+	private final long[] jarLastModified;
+
+	private final Map<String, Integer> jarIds = new HashMap<>();
+
+	private final int classCount;
+
+	private final int nameOffsets;
+
+	private final int postingOffsets;
+
+	private final int names;
+
+	private final int postings;
+
+	private RepositoryIndex(Path indexFile) throws IOException
+	{
+		this.indexFile = indexFile;
+		channel = FileChannel.open(indexFile, StandardOpenOption.READ);
+		try
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Indexes larger than 2GB are not supported: " + indexFile);
+			// The header is read sequentially, the classes with positional reads
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException(indexFile + " is not a repository index");
+			int position = 8;
+			repository = readString(in);
+			position += stringLength(repository);
+			int jarCount = in.readInt();
+			position += 4;
+			jarPaths = new String[jarCount];
+			jarSizes = new long[jarCount];
+			jarLastModified = new long[jarCount];
+			for (int jar = 0; jar < jarCount; jar++)
+			{
+				jarPaths[jar] = readString(in);
+				jarSizes[jar] = in.readLong();
+				jarLastModified[jar] = in.readLong();
+				jarIds.put(jarPaths[jar], jar);
+				position += stringLength(jarPaths[jar]) + 16;
+			}
+			classCount = in.readInt();
+			nameOffsets = position + 4;
+			postingOffsets = nameOffsets + 4 * (classCount + 1);
+			names = postingOffsets + 4 * (classCount + 1);
+			postings = names + readInt(nameOffsets + 4 * classCount);
+		}
+		catch (IOException | RuntimeException e)
+		{
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Opens an existing index. The jar table is read into memory and stays available after the
+	 * index is closed, the classes are read from the file while it is open.
+	 */
+	public static RepositoryIndex open(Path indexFile) throws IOException
+	{
+		return new RepositoryIndex(indexFile);
+	}
+
+	/**
+	 * Updates the index of the repository, scanning only the jars that are new or changed since
+	 * the previous update, and opens the updated index.
+	 */
+	public static RepositoryIndex update(Path repository, Path indexFile, ScanEngine engine,
+			EnforcerLogger log) throws IOException
+	{
+		Path root = repository.toAbsolutePath().normalize();
+		Map<String, BasicFileAttributes> jars = listJars(root);
+
+		RepositoryIndex previous = null;
+		try
+		{
+			previous = open(indexFile);
+			if (!previous.repository.equals(root.toString()))
+			{
+				log.info("Rebuilding " + indexFile + ", it indexes " + previous.repository);
+				previous.close();
+				previous = null;
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			log.info("Creating " + indexFile);
+		}
+		catch (IOException e)
+		{
+			log.warn("Rebuilding " + indexFile + " due to " + e.getMessage());
+		}
+
+		// Jars get new ids in path order, unchanged jars keep their references
+		List<String> paths = new ArrayList<>(new TreeSet<>(jars.keySet()));
+		int[] previousToNew = previous == null ? new int[0] : new int[previous.jarPaths.length];
+		Arrays.fill(previousToNew, -1);
+		List<String> changed = new ArrayList<>();
+		for (int jar = 0; jar < paths.size(); jar++)
+		{
+			String path = paths.get(jar);
+			BasicFileAttributes attrs = jars.get(path);
+			Integer previousId = previous == null ? null : previous.jarIds.get(path);
+			if (previousId != null && previous.jarSizes[previousId] == attrs.size()
+				&& previous.jarLastModified[previousId] == attrs.lastModifiedTime().toMillis())
+				previousToNew[previousId] = jar;
+			else
+				changed.add(path);
+		}
+
+		Map<String, Postings> index = new HashMap<>();
+		if (previous != null)
+		{
+			try (RepositoryIndex source = previous)
+			{
+				source.copyPostings(previousToNew, index);
+			}
+		}
+		log.info("Scanning " + changed.size() + " new or changed jars, reusing "
+			+ (paths.size() - changed.size()) + " jars");
+		Map<String, Set<String>> scanned = scanJars(root, changed, engine, log);
+		for (int jar = 0; jar < paths.size(); jar++)
+		{
+			Set<String> references = scanned.get(paths.get(jar));
+			if (references != null)
+			{
+				for (String reference : references)
+				{
+					index.computeIfAbsent(reference, r -> new Postings()).add(jar);
+				}
+			}
+		}
+
+		write(indexFile, root.toString(), paths, jars, index);
+		return open(indexFile);
+	}
+
+	private static Map<String, BasicFileAttributes> listJars(Path root) throws IOException
+	{
+		Map<String, BasicFileAttributes> ret = new HashMap<>();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+			{
+				String name = file.getFileName().toString();
+				// Sources and javadoc do not contain classes
+				if (attrs.isRegularFile() && name.endsWith(".jar")
+					&& !name.endsWith("-sources.jar") && !name.endsWith("-javadoc.jar"))
+					ret.put(root.relativize(file).toString().replace(File.separatorChar, '/'),
+						attrs);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return ret;
+	}
+
+	private static Map<String, Set<String>> scanJars(Path root, List<String> paths,
+			ScanEngine engine, EnforcerLogger log)
+	{
+		Map<String, Set<String>> ret = new ConcurrentHashMap<>();
+		// The same library is often nested in several jars, its references are shared
+		Map<String, Set<String>> nestedResults = new ConcurrentHashMap<>();
+		AtomicInteger done = new AtomicInteger();
+		paths.parallelStream().forEach(path -> {
+			ArchiveScanner scanner = new ArchiveScanner(engine, ScanDepth.FULL, null, null,
+				"index", nestedResults, log);
+			try
+			{
+				ret.put(path, scanner.scan(root.resolve(path).toFile()));
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// Indexed without references, so it is not scanned again until it changes
+				log.warn("Skipping " + path + " due to " + e.getMessage());
+				ret.put(path, Set.of());
+			}
+			int count = done.incrementAndGet();
+			if (count % 1000 == 0)
+				log.info("Scanned " + count + " of " + paths.size() + " jars");
+		});
+		return ret;
+	}
+
+	private void copyPostings(int[] previousToNew, Map<String, Postings> index)
+			throws IOException
+	{
+		// Every class is copied, so the classes are read at once
+		ByteBuffer classes = read(nameOffsets, (int) channel.size() - nameOffsets);
+		int base = nameOffsets;
+		for (int classIndex = 0; classIndex < classCount; classIndex++)
+		{
+			int start = classes.getInt(postingOffsets - base + 4 * classIndex);
+			int end = classes.getInt(postingOffsets - base + 4 * (classIndex + 1));
+			Postings copy = null;
+			for (int posting = start; posting < end; posting++)
+			{
+				int jar = previousToNew[classes.getInt(postings - base + 4 * posting)];
+				if (jar < 0)
+					continue;
+				if (copy == null)
+				{
+					int nameStart = classes.getInt(4 * classIndex);
+					int nameEnd = classes.getInt(4 * (classIndex + 1));
+					String name = new String(classes.array(), names - base + nameStart,
+						nameEnd - nameStart, StandardCharsets.UTF_8);
+					copy = index.computeIfAbsent(name, n -> new Postings());
+				}
+				copy.add(jar);
+			}
+		}
+	}
+
+	private static void write(Path indexFile, String repository, List<String> paths,
+			Map<String, BasicFileAttributes> jars, Map<String, Postings> index)
+			throws IOException
+	{
+		List<byte[]> classNames = new ArrayList<>(index.size());
+		for (String name : index.keySet())
+		{
+			classNames.add(name.getBytes(StandardCharsets.UTF_8));
+		}
+		classNames.sort(Arrays::compareUnsigned);
+
+		Path parent = indexFile.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+		try (DataOutputStream out =
+			new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, repository);
+			out.writeInt(paths.size());
+			for (String path : paths)
+			{
+				BasicFileAttributes attrs = jars.get(path);
+				writeString(out, path);
+				out.writeLong(attrs.size());
+				out.writeLong(attrs.lastModifiedTime().toMillis());
+			}
+			out.writeInt(classNames.size());
+			int offset = 0;
+			for (byte[] name : classNames)
+			{
+				out.writeInt(offset);
+				offset += name.length;
+			}
+			out.writeInt(offset);
+			List<Postings> sorted = new ArrayList<>(classNames.size());
+			offset = 0;
+			for (byte[] name : classNames)
+			{
+				Postings classPostings = index.get(new String(name, StandardCharsets.UTF_8));
+				sorted.add(classPostings);
+				out.writeInt(offset);
+				offset += classPostings.size;
+			}
+			out.writeInt(offset);
+			for (byte[] name : classNames)
+			{
+				out.write(name);
+			}
+			for (Postings classPostings : sorted)
+			{
+				Arrays.sort(classPostings.jars, 0, classPostings.size);
+				for (int posting = 0; posting < classPostings.size; posting++)
+				{
+					out.writeInt(classPostings.jars[posting]);
+				}
+			}
+		}
+		Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * @return the absolute path of the indexed repository
+	 */
+	public String getRepository()
+	{
+		return repository;
+	}
+
+	public int getJarCount()
+	{
+		return jarPaths.length;
+	}
+
+	public int getClassCount()
+	{
+		return classCount;
+	}
+
+	/**
+	 * @return the path of the jar relative to the repository
+	 */
+	public String getJarPath(int jar)
+	{
+		return jarPaths[jar];
+	}
+
+	/**
+	 * Returns the id of the jar in the index, or -1 when the file is not in the indexed
+	 * repository, was not indexed or changed since the index was updated.
+	 */
+	public int getJar(File file)
+	{
+		String path = file.getAbsolutePath();
+		if (!path.startsWith(repository + File.separator))
+			return -1;
+		Integer ret = jarIds
+			.get(path.substring(repository.length() + 1).replace(File.separatorChar, '/'));
+		if (ret == null || jarSizes[ret] != file.length()
+			|| jarLastModified[ret] != file.lastModified())
+			return -1;
+		return ret;
+	}
+
+	/**
+	 * Returns the classes referenced by each jar that match the given class names, in the format
+	 * of {@link ClassNameMatcher}. Only the classes that start with the part of the names before
+	 * the wildcard are read from the index.
+	 */
+	public Map<Integer, Set<String>> findReferences(Collection<String> classNames)
+			throws IOException
+	{
+		ClassNameMatcher matcher = new ClassNameMatcher(classNames);
+		Map<Integer, Set<String>> ret = new TreeMap<>();
+		for (String prefix : getPrefixes(classNames))
+		{
+			forEachClass(prefix, (name, jars) -> {
+				if (matcher.matches(name))
+				{
+					for (int jar : jars)
+					{
+						ret.computeIfAbsent(jar, j -> new TreeSet<>()).add(name);
+					}
+				}
+			});
+		}
+		return ret;
+	}
+
+	/**
+	 * Returns the literal prefixes of the class names, leaving out the prefixes that start with
+	 * another prefix, so every class is visited once.
+	 */
+	private static List<String> getPrefixes(Collection<String> classNames)
+	{
+		TreeSet<String> sorted = new TreeSet<>();
+		for (String className : classNames)
+		{
+			String prefix = className.endsWith("*")
+				? className.substring(0, className.length() - 1) : className;
+			sorted.add(prefix.replace('.', '/'));
+		}
+		List<String> ret = new ArrayList<>();
+		for (String prefix : sorted)
+		{
+			if (ret.isEmpty() || !prefix.startsWith(ret.get(ret.size() - 1)))
+				ret.add(prefix);
+		}
+		return ret;
+	}
+
+	/**
+	 * Calls the consumer for every class in the index whose internal name starts with the
+	 * prefix, with the ids of the jars that reference it.
+	 */
+	public void forEachClass(String prefix, ClassConsumer consumer) throws IOException
+	{
+		byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = classCount;
+		while (low < high)
+		{
+			int middle = (low + high) >>> 1;
+			if (Arrays.compareUnsigned(getNameBytes(middle), prefixBytes) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		for (int index = low; index < classCount; index++)
+		{
+			byte[] name = getNameBytes(index);
+			if (name.length < prefixBytes.length
+				|| !Arrays.equals(name, 0, prefixBytes.length, prefixBytes, 0, prefixBytes.length))
+				break;
+			ByteBuffer offsets = read(postingOffsets + 4 * index, 8);
+			int start = offsets.getInt(0);
+			int end = offsets.getInt(4);
+			ByteBuffer classPostings = read(postings + 4 * start, 4 * (end - start));
+			int[] jars = new int[end - start];
+			classPostings.asIntBuffer().get(jars);
+			consumer.accept(new String(name, StandardCharsets.UTF_8), jars);
+		}
+	}
+
+	private byte[] getNameBytes(int index) throws IOException
+	{
+		ByteBuffer offsets = read(nameOffsets + 4 * index, 8);
+		int start = offsets.getInt(0);
+		return read(names + start, offsets.getInt(4) - start).array();
+	}
+
+	private int readInt(long position) throws IOException
+	{
+		return read(position, 4).getInt(0);
+	}
+
+	private ByteBuffer read(long position, int count) throws IOException
+	{
+		ByteBuffer ret = ByteBuffer.allocate(count);
+		while (ret.hasRemaining())
+		{
+			if (channel.read(ret, position + ret.position()) < 0)
+				throw new EOFException("Unexpected end of " + indexFile);
+		}
+		ret.flip();
+		return ret;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns the number of bytes {@link #writeString} writes for the value.
+	 */
+	private static int stringLength(String value)
+	{
+		return 4 + value.getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		channel.close();
+	}
+
+	/**
+	 * Updates the index of a repository and lists the jars that reference the given classes.
+	 * <p>
+	 * Usage: <code>RepositoryIndex &lt;repository&gt; &lt;index file&gt; [class name]...</code>,
+	 * where a class name may end with a wildcard, such as <code>javax.xml.bind.*</code>.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: RepositoryIndex <repository> <index file> [class name]...");
+			System.exit(2);
+		}
+		ConsoleLog log = new ConsoleLog(false);
+		long start = System.nanoTime();
+		try (RepositoryIndex index =
+			update(Paths.get(args[0]), Paths.get(args[1]), ScanEngine.ASM, log))
+		{
+			log.info("Indexed " + index.getClassCount() + " classes referenced by "
+				+ index.getJarCount() + " jars in "
+				+ ScanMetrics.toMillis(System.nanoTime() - start) + "ms");
+			if (args.length > 2)
+			{
+				start = System.nanoTime();
+				Map<Integer, Set<String>> references =
+					index.findReferences(Arrays.asList(args).subList(2, args.length));
+				for (Map.Entry<Integer, Set<String>> entry : references.entrySet())
+				{
+					System.out.println(index.getJarPath(entry.getKey()));
+					for (String className : entry.getValue())
+					{
+						System.out.println("    " + className.replace('/', '.'));
+					}
+				}
+				log.info(references.size() + " jars found in "
+					+ ScanMetrics.toMillis(System.nanoTime() - start) + "ms");
+			}
+		}
+	}
+
+	@FunctionalInterface
+	public interface ClassConsumer
+	{
+		void accept(String className, int[] jars);
+	}
+
+	/**
+	 * The ids of the jars that reference a class, while building the index.
+	 */
+	private static class Postings
+	{
+		private int[] jars = new int[2];
+
+		private int size;
+
+		private void add(int jar)
+		{
+			if (size == jars.length)
+				jars = Arrays.copyOf(jars, size * 2);
+			jars[size++] = jar;
+		}
+	}
+}
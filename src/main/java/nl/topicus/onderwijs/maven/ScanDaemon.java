@@ -0,0 +1,227 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.maven.enforcer.rule.api.EnforcerLogger;
+
+/**
+ * A long running process that checks class paths for {@link BanClassUsageCli}, so the JIT stays
+ * warm and the classes referenced by each jar are kept in memory between requests. Jars are only
+ * scanned again when they change. The number of kept results is limited, the results of the
+ * least recently used jars are released first, which includes the old versions of changed jars.
+ * The output of a check, including its log, is sent back to the client.
+ * <p>
+ * The daemon only listens on the loopback address. It writes its port and a random token to the
+ * daemon file, readable only by its owner, and a request has to start with the token. A request
+ * is a line with the token, a line with the number of arguments and a line per argument. The
+ * response is a line with the exit code, followed by the output.
+ */
+public class ScanDaemon implements Closeable
+{
+	private static final int TIMEOUT_MILLIS = 60_000;
+
+	private static final int MAX_RESULTS = 2_000;
+
+	private static final int MAX_CLASS_RESULTS = 500_000;
+
+	private final Path daemonFile;
+
+	private final ServerSocket serverSocket;
+
+	private final String token;
+
+	private final SessionScanResults results =
+		new SessionScanResults(MAX_RESULTS, MAX_CLASS_RESULTS);
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "ban-class-usage-daemon");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final EnforcerLogger log;
+
+	public ScanDaemon(Path daemonFile, EnforcerLogger log) throws IOException
+	{
+		this.daemonFile = daemonFile;
+		this.log = log;
+		byte[] random = new byte[16];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for (byte b : random)
+		{
+			hex.append(String.format("%02x", b));
+		}
+		token = hex.toString();
+		serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		writeDaemonFile();
+	}
+
+	private void writeDaemonFile() throws IOException
+	{
+		Path tmp = daemonFile.resolveSibling(daemonFile.getFileName() + ".tmp");
+		Files.deleteIfExists(tmp);
+		try
+		{
+			Files.createFile(tmp,
+				PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		}
+		catch (UnsupportedOperationException e)
+		{
+			// Not a POSIX file system, the file gets the default permissions
+			Files.createFile(tmp);
+		}
+		Files.write(tmp,
+			(serverSocket.getLocalPort() + " " + token).getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, daemonFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Handles requests until the daemon is stopped.
+	 */
+	public void run() throws IOException
+	{
+		log.info("Listening on port " + serverSocket.getLocalPort() + ", see " + daemonFile);
+		try
+		{
+			while (true)
+			{
+				Socket socket = serverSocket.accept();
+				executor.execute(() -> handle(socket));
+			}
+		}
+		catch (SocketException e)
+		{
+			if (!serverSocket.isClosed())
+				throw e;
+		}
+		finally
+		{
+			close();
+		}
+	}
+
+	private void handle(Socket socket)
+	{
+		try (Socket connection = socket)
+		{
+			connection.setSoTimeout(TIMEOUT_MILLIS);
+			BufferedReader reader = new BufferedReader(
+				new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+			String requestToken = reader.readLine();
+			if (requestToken == null || !MessageDigest.isEqual(
+				token.getBytes(StandardCharsets.UTF_8),
+				requestToken.getBytes(StandardCharsets.UTF_8)))
+			{
+				log.warn("Rejected a request with an invalid token");
+				return;
+			}
+			int count = Integer.parseInt(reader.readLine());
+			List<String> args = new ArrayList<>();
+			for (int arg = 0; arg < count; arg++)
+			{
+				args.add(reader.readLine());
+			}
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			int exitCode;
+			boolean stop = args.size() == 1 && "stop".equals(args.get(0));
+			try (PrintStream out = new PrintStream(output, true, StandardCharsets.UTF_8))
+			{
+				if (stop)
+				{
+					out.println("Stopped the daemon");
+					exitCode = 0;
+				}
+				else
+				{
+					exitCode = BanClassUsageCli.check(args, out, out, results);
+				}
+			}
+			Writer writer =
+				new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8);
+			writer.write(exitCode + "\n");
+			writer.write(output.toString(StandardCharsets.UTF_8));
+			writer.flush();
+			if (stop)
+				serverSocket.close();
+		}
+		catch (IOException | RuntimeException e)
+		{
+			log.warn("Unable to handle a request due to " + e);
+		}
+	}
+
+	/**
+	 * Sends the arguments to the daemon and copies its output.
+	 *
+	 * @return the exit code of the request
+	 * @throws IOException
+	 *             when the daemon is not running
+	 */
+	public static int request(Path daemonFile, List<String> args, PrintStream out)
+			throws IOException
+	{
+		String[] portAndToken =
+			new String(Files.readAllBytes(daemonFile), StandardCharsets.UTF_8).trim().split(" ");
+		try (Socket socket =
+			new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(portAndToken[0])))
+		{
+			Writer writer =
+				new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+			writer.write(portAndToken[1] + "\n" + args.size() + "\n");
+			for (String arg : args)
+			{
+				if (arg.indexOf('\n') >= 0 || arg.indexOf('\r') >= 0)
+					throw new IllegalArgumentException("Arguments cannot contain line breaks");
+				writer.write(arg + "\n");
+			}
+			writer.flush();
+			BufferedReader reader = new BufferedReader(
+				new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			String exitCode = reader.readLine();
+			if (exitCode == null)
+				throw new IOException("The daemon did not respond, is " + daemonFile + " stale?");
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				out.println(line);
+			}
+			return Integer.parseInt(exitCode);
+		}
+		catch (NumberFormatException | ArrayIndexOutOfBoundsException e)
+		{
+			throw new IOException("Invalid daemon file " + daemonFile, e);
+		}
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		executor.shutdown();
+		serverSocket.close();
+		Files.deleteIfExists(daemonFile);
+	}
+}
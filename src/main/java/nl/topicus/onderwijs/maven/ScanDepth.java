@@ -0,0 +1,36 @@
+package nl.topicus.onderwijs.maven;
+
+import org.objectweb.asm.ClassReader;
+
+/**
+ * Which parts of a class file are scanned for references to banned classes.
+ */
+public enum ScanDepth
+{
+	/**
+	 * Only the API of the classes: supertypes, fields, method signatures, thrown exceptions and
+	 * annotations. Method bodies are not read.
+	 */
+	API(ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES | ClassReader.SKIP_CODE),
+
+	/**
+	 * The API and the method bodies.
+	 */
+	FULL(ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+
+	private final int parsingOptions;
+
+	ScanDepth(int parsingOptions)
+	{
+		this.parsingOptions = parsingOptions;
+	}
+
+	/**
+	 * @return the options to pass to {@link ClassReader#accept(org.objectweb.asm.ClassVisitor,
+	 *         int)}
+	 */
+	public int getParsingOptions()
+	{
+		return parsingOptions;
+	}
+}
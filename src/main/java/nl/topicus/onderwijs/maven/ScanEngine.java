@@ -0,0 +1,94 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Set;
+
+/**
+ * The available ways to collect the classes referenced by a class file.
+ */
+public enum ScanEngine
+{
+	/**
+	 * Visits the complete class with ASM, using {@link ClassDependencyCollector}.
+	 */
+	ASM
+	{
+		@Override
+		public Set<String> collect(byte[] classFile, int offset, int length)
+		{
+			ClassDependencyCollector collector = new ClassDependencyCollector();
+			collector.collect(classFile, offset, length);
+			return collector.getDeps();
+		}
+
+		@Override
+		public Collector newCollector(SymbolTable symbols, IntSet deps, ScanDepth depth)
+		{
+			return new ClassDependencyCollector(symbols, deps, depth)::collect;
+		}
+	},
+
+	/**
+	 * Reads the constant pool and the relevant attributes directly, using
+	 * {@link ConstantPoolDependencyCollector}.
+	 */
+	CONSTANT_POOL
+	{
+		@Override
+		public Set<String> collect(byte[] classFile, int offset, int length)
+		{
+			return new ConstantPoolDependencyCollector().collect(classFile, offset, length)
+				.getDeps();
+		}
+
+		@Override
+		public Collector newCollector(SymbolTable symbols, IntSet deps, ScanDepth depth)
+		{
+			return new ConstantPoolDependencyCollector(symbols, deps, depth)::collect;
+		}
+	};
+
+	/**
+	 * Collects the classes referenced by one class file after the other. Unlike the engine
+	 * itself, a collector is not thread safe.
+	 */
+	@FunctionalInterface
+	public interface Collector
+	{
+		/**
+		 * Adds the ids of all classes referenced by the class file in the given range of the
+		 * array to the set the collector was created with.
+		 */
+		void collect(byte[] classFile, int offset, int length);
+	}
+
+	/**
+	 * Returns the internal names of all classes referenced by the given class file.
+	 */
+	public Set<String> collect(byte[] classFile)
+	{
+		return collect(classFile, 0, classFile.length);
+	}
+
+	/**
+	 * Returns the internal names of all classes referenced by the class file in the given range
+	 * of the array.
+	 */
+	public abstract Set<String> collect(byte[] classFile, int offset, int length);
+
+	/**
+	 * Adds the ids of all classes referenced by the class file in the given range of the array to
+	 * the given set.
+	 */
+	public void collect(byte[] classFile, int offset, int length, SymbolTable symbols,
+			IntSet deps)
+	{
+		newCollector(symbols, deps, ScanDepth.FULL).collect(classFile, offset, length);
+	}
+
+	/**
+	 * Creates a collector that adds the ids of the classes referenced from the given depth of
+	 * the class files to the given set. The collector reuses its visitors and buffers for every
+	 * class it collects.
+	 */
+	public abstract Collector newCollector(SymbolTable symbols, IntSet deps, ScanDepth depth);
+}
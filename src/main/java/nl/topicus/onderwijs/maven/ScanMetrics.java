@@ -0,0 +1,256 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.artifact.Artifact;
+import org.eclipse.aether.AbstractRepositoryListener;
+import org.eclipse.aether.RepositoryEvent;
+import org.eclipse.aether.RepositoryListener;
+
+/**
+ * Timings and counters of a single run of {@link BanClassUsage}, per artifact. The metrics are
+ * written to a JSON report, so slow runs can be traced to the artifacts that caused them.
+ */
+public class ScanMetrics
+{
+	private final Map<String, ArtifactMetrics> artifacts = new ConcurrentHashMap<>();
+
+	private final Map<String, Long> resolutionStarts = new ConcurrentHashMap<>();
+
+	private final Map<String, Long> resolutionNanos = new ConcurrentHashMap<>();
+
+	private long totalResolutionNanos;
+
+	private final RepositoryListener resolutionListener = new AbstractRepositoryListener()
+	{
+		@Override
+		public void artifactResolving(RepositoryEvent event)
+		{
+			resolutionStarts.put(getKey(event.getArtifact()), System.nanoTime());
+		}
+
+		@Override
+		public void artifactResolved(RepositoryEvent event)
+		{
+			String key = getKey(event.getArtifact());
+			Long start = resolutionStarts.remove(key);
+			if (start != null)
+				resolutionNanos.merge(key, System.nanoTime() - start, Long::sum);
+		}
+	};
+
+	public ArtifactMetrics forArtifact(Artifact artifact)
+	{
+		return artifacts.computeIfAbsent(artifact.getId(),
+			id -> new ArtifactMetrics(id, artifact.getFile()));
+	}
+
+	/**
+	 * Returns a listener that times the resolution of each artifact, to be chained to the
+	 * listener of the repository session.
+	 */
+	public RepositoryListener getResolutionListener()
+	{
+		return resolutionListener;
+	}
+
+	/**
+	 * Returns the time it took to resolve the artifact, as seen by the resolution listener.
+	 */
+	public long getResolutionNanos(Artifact artifact)
+	{
+		return resolutionNanos.getOrDefault(getKey(RepositoryUtils.toArtifact(artifact)), 0L);
+	}
+
+	public void setTotalResolutionNanos(long totalResolutionNanos)
+	{
+		this.totalResolutionNanos = totalResolutionNanos;
+	}
+
+	/**
+	 * Returns the artifacts that took the longest to resolve and scan, slowest first.
+	 */
+	public List<ArtifactMetrics> getSlowest(int count)
+	{
+		List<ArtifactMetrics> ret = new ArrayList<>(artifacts.values());
+		ret.sort(Comparator.comparingLong(ArtifactMetrics::getTotalNanos).reversed());
+		return ret.subList(0, Math.min(count, ret.size()));
+	}
+
+	/**
+	 * Writes the report, replacing the file only once it is complete.
+	 */
+	public void write(Path file, String project, long totalNanos) throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (JsonWriter writer =
+			new JsonWriter(Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)))
+		{
+			writer.beginObject()
+				.name("project")
+				.value(project)
+				.name("totalMillis")
+				.value(toMillis(totalNanos))
+				.name("resolutionMillis")
+				.value(toMillis(totalResolutionNanos))
+				.name("artifacts")
+				.beginArray();
+			for (ArtifactMetrics metrics : getSlowest(artifacts.size()))
+			{
+				writer.beginObject()
+					.name("id")
+					.value(metrics.id)
+					.name("file")
+					.value(metrics.file == null ? null : metrics.file.getPath())
+					.name("source")
+					.value(metrics.source)
+					.name("resolutionMillis")
+					.value(toMillis(metrics.resolutionNanos))
+					.name("scanMillis")
+					.value(toMillis(metrics.scanNanos))
+					.name("parseMillis")
+					.value(toMillis(metrics.parseNanos))
+					.name("bytesRead")
+					.value(metrics.bytesRead)
+					.name("classesParsed")
+					.value(metrics.classesParsed)
+					.name("classesSkipped")
+					.value(metrics.classesSkipped)
+					.name("classesReused")
+					.value(metrics.classesReused)
+					.name("matches")
+					.value(metrics.matches)
+					.endObject();
+			}
+			writer.endArray().endObject();
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String getKey(org.eclipse.aether.artifact.Artifact artifact)
+	{
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":"
+			+ artifact.getExtension() + ":" + artifact.getClassifier() + ":"
+			+ artifact.getBaseVersion();
+	}
+
+	static long toMillis(long nanos)
+	{
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	/**
+	 * The metrics of a single artifact. Each artifact is scanned by a single thread.
+	 */
+	public static class ArtifactMetrics
+	{
+		private final String id;
+
+		private final File file;
+
+		/**
+		 * Where the references came from: scanned, shared by another module, the cache, the
+		 * repository index or the incremental state. Artifacts that were not checked because the
+		 * rule stopped early are unchecked, artifacts whose scan was stopped are stopped.
+		 */
+		private String source = "unchecked";
+
+		private long resolutionNanos;
+
+		/**
+		 * The time it took to get the referenced classes, including waiting for another module
+		 * that scans the same artifact.
+		 */
+		private long scanNanos;
+
+		private long parseNanos;
+
+		private long bytesRead;
+
+		private long classesParsed;
+
+		private long classesSkipped;
+
+		/**
+		 * The class files whose result was reused from an identical class file in another jar.
+		 */
+		private long classesReused;
+
+		private int matches;
+
+		private ArtifactMetrics(String id, File file)
+		{
+			this.id = id;
+			this.file = file;
+		}
+
+		public String getId()
+		{
+			return id;
+		}
+
+		public String getSource()
+		{
+			return source;
+		}
+
+		public void setSource(String source)
+		{
+			this.source = source;
+		}
+
+		public void setResolutionNanos(long resolutionNanos)
+		{
+			this.resolutionNanos = resolutionNanos;
+		}
+
+		public void setScanNanos(long scanNanos)
+		{
+			this.scanNanos = scanNanos;
+		}
+
+		public void addParsed(long nanos, long bytes, long parsed, long skipped)
+		{
+			parseNanos += nanos;
+			bytesRead += bytes;
+			classesParsed += parsed;
+			classesSkipped += skipped;
+		}
+
+		public void addReused(long reused)
+		{
+			classesReused += reused;
+		}
+
+		public void setMatches(int matches)
+		{
+			this.matches = matches;
+		}
+
+		public long getTotalNanos()
+		{
+			return resolutionNanos + scanNanos;
+		}
+
+		@Override
+		public String toString()
+		{
+			return id + ": " + toMillis(getTotalNanos()) + "ms (resolution "
+				+ toMillis(resolutionNanos) + "ms, " + source + " " + toMillis(scanNanos) + "ms, "
+				+ classesParsed + " classes parsed, " + bytesRead + " bytes read)";
+		}
+	}
+}
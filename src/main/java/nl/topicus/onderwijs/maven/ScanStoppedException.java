@@ -0,0 +1,26 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Thrown by a scan that was stopped by {@link FailFast}, with the classes referenced by the part
+ * that was scanned. The result is incomplete, so it must not be shared or stored.
+ */
+public class ScanStoppedException extends CancellationException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final transient Set<String> referencedClasses;
+
+	public ScanStoppedException(Set<String> referencedClasses)
+	{
+		super("Scan stopped after finding enough banned classes");
+		this.referencedClasses = referencedClasses;
+	}
+
+	public Set<String> getReferencedClasses()
+	{
+		return referencedClasses;
+	}
+}
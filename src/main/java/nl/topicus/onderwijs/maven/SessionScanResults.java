@@ -0,0 +1,180 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Named;
+
+import org.apache.maven.SessionScoped;
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * The classes referenced by each scanned jar, shared by all modules of a build. When modules
+ * built in parallel need the same jar, only one of them scans it and the others wait for that
+ * result.
+ * <p>
+ * The results of a build are kept until the build ends. A long running process, such as
+ * {@link ScanDaemon}, limits the number of results instead, dropping the least recently used
+ * ones, so the results of jars that changed or are no longer used are released.
+ */
+@Named
+@SessionScoped
+public class SessionScanResults
+{
+	private final Map<String, CompletableFuture<Set<String>>> results;
+
+	/**
+	 * The classes referenced by archives nested in other archives, see {@link ArchiveScanner}.
+	 */
+	private final Map<String, Set<String>> nestedResults;
+
+	/**
+	 * The classes referenced by single class files, by configuration key.
+	 */
+	private final Map<String, ClassResults> classResults;
+
+	/**
+	 * The maximum number of class files in each {@link ClassResults}, 0 when it is not limited.
+	 */
+	private final int maxClassResults;
+
+	private final AtomicInteger scans = new AtomicInteger();
+
+	private final AtomicInteger reused = new AtomicInteger();
+
+	public SessionScanResults()
+	{
+		this(0, 0);
+	}
+
+	/**
+	 * @param maxResults
+	 *            the maximum number of jars and of nested archives to keep the results of
+	 * @param maxClassResults
+	 *            the maximum number of class files to keep the results of for each configuration
+	 */
+	public SessionScanResults(int maxResults, int maxClassResults)
+	{
+		this.results = newMap(maxResults);
+		this.nestedResults = newMap(maxResults);
+		this.classResults = newMap(maxResults);
+		this.maxClassResults = maxClassResults;
+	}
+
+	private static <V> Map<String, V> newMap(int maxEntries)
+	{
+		if (maxEntries <= 0)
+			return new ConcurrentHashMap<>();
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+			{
+				return size() > maxEntries;
+			}
+		});
+	}
+
+	/**
+	 * Returns the result for the given key, running the scan only when no other module has
+	 * scanned, or is scanning, the same key.
+	 */
+	public Set<String> getReferencedClasses(String key, Scan scan) throws EnforcerRuleException
+	{
+		CompletableFuture<Set<String>> future = new CompletableFuture<>();
+		CompletableFuture<Set<String>> existing = results.putIfAbsent(key, future);
+		if (existing != null)
+		{
+			try
+			{
+				Set<String> ret = await(existing);
+				reused.incrementAndGet();
+				return ret;
+			}
+			catch (CancellationException e)
+			{
+				// The other module stopped its scan early, its result is incomplete
+				return getReferencedClasses(key, scan);
+			}
+		}
+
+		scans.incrementAndGet();
+		try
+		{
+			Set<String> ret = scan.scan();
+			future.complete(ret);
+			return ret;
+		}
+		catch (EnforcerRuleException | RuntimeException e)
+		{
+			// Let a later request try again instead of failing on a stored error
+			results.remove(key, future);
+			future.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	private static Set<String> await(CompletableFuture<Set<String>> future)
+			throws EnforcerRuleException
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof EnforcerRuleException)
+				throw (EnforcerRuleException) e.getCause();
+			throw new EnforcerRuleException("Error while scanning", e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new EnforcerRuleException("Interrupted while waiting for a scan", e);
+		}
+	}
+
+	public Map<String, Set<String>> getNestedResults()
+	{
+		return nestedResults;
+	}
+
+	/**
+	 * Returns the results of class files scanned with the given configuration, see
+	 * {@link ClassResults}.
+	 */
+	public ClassResults getClassResults(String configurationKey)
+	{
+		return classResults.computeIfAbsent(configurationKey,
+			key -> new ClassResults(maxClassResults));
+	}
+
+	/**
+	 * @return the number of scans that actually ran in this build
+	 */
+	public int getScans()
+	{
+		return scans.get();
+	}
+
+	/**
+	 * @return the number of scans that were saved by reusing an earlier or running scan
+	 */
+	public int getReused()
+	{
+		return reused.get();
+	}
+
+	@FunctionalInterface
+	public interface Scan
+	{
+		Set<String> scan() throws EnforcerRuleException;
+	}
+}
@@ -0,0 +1,87 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Arrays;
+
+/**
+ * Interns class names to int ids. A name is looked up by a range of characters of a larger
+ * string, such as the class name inside a descriptor, so a name that is already known does not
+ * allocate a new String. Ids are assigned in order, starting at 0.
+ */
+public class SymbolTable
+{
+	private String[] names = new String[256];
+
+	private int[] hashes = new int[256];
+
+	/**
+	 * Open addressing table of id + 1, 0 marks an empty slot.
+	 */
+	private int[] table = new int[512];
+
+	private int size;
+
+	public int intern(String name)
+	{
+		return intern(name, 0, name.length());
+	}
+
+	/**
+	 * Returns the id of the characters between start (inclusive) and end (exclusive) of the given
+	 * string, adding it to the table when it is not known yet.
+	 */
+	public int intern(String source, int start, int end)
+	{
+		int hash = 0;
+		for (int index = start; index < end; index++)
+		{
+			hash = 31 * hash + source.charAt(index);
+		}
+		int length = end - start;
+		int mask = table.length - 1;
+		int slot = (hash ^ (hash >>> 16)) & mask;
+		while (table[slot] != 0)
+		{
+			int id = table[slot] - 1;
+			if (hashes[id] == hash && names[id].length() == length
+				&& names[id].regionMatches(0, source, start, length))
+				return id;
+			slot = (slot + 1) & mask;
+		}
+
+		int id = size++;
+		if (id == names.length)
+		{
+			names = Arrays.copyOf(names, id * 2);
+			hashes = Arrays.copyOf(hashes, id * 2);
+		}
+		names[id] = start == 0 && end == source.length() ? source : source.substring(start, end);
+		hashes[id] = hash;
+		table[slot] = id + 1;
+		if (size * 2 > table.length)
+			rehash();
+		return id;
+	}
+
+	public String getName(int id)
+	{
+		return names[id];
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	private void rehash()
+	{
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 0; id < size; id++)
+		{
+			int slot = (hashes[id] ^ (hashes[id] >>> 16)) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id + 1;
+		}
+	}
+}
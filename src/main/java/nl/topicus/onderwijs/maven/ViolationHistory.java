@@ -0,0 +1,104 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * The number of banned classes found in each artifact by the previous runs, used to check the
+ * artifacts that are most likely to use banned classes first. Artifacts are identified without
+ * their version, so an artifact that used banned classes is still checked first after an upgrade.
+ * <p>
+ * The file starts with a header line, followed by a line per artifact with banned classes:
+ * <code>groupId:artifactId:type:classifier</code> and the number of banned classes, separated by
+ * a tab.
+ */
+public class ViolationHistory
+{
+	private static final String HEADER = "ban-class-usage-violations-1";
+
+	private final Path file;
+
+	private final Map<String, Integer> violations;
+
+	private ViolationHistory(Path file, Map<String, Integer> violations)
+	{
+		this.file = file;
+		this.violations = violations;
+	}
+
+	public static ViolationHistory load(Path file) throws IOException
+	{
+		Map<String, Integer> violations = new HashMap<>();
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			if (HEADER.equals(reader.readLine()))
+			{
+				String line;
+				while ((line = reader.readLine()) != null)
+				{
+					int tab = line.indexOf('\t');
+					if (tab > 0)
+						violations.put(line.substring(0, tab),
+							Integer.valueOf(line.substring(tab + 1)));
+				}
+			}
+		}
+		catch (NoSuchFileException e)
+		{
+			// First run
+		}
+		catch (NumberFormatException e)
+		{
+			// Corrupt history, start over
+			violations.clear();
+		}
+		return new ViolationHistory(file, violations);
+	}
+
+	public int getViolations(Artifact artifact)
+	{
+		return violations.getOrDefault(getKey(artifact), 0);
+	}
+
+	public void putViolations(Artifact artifact, int count)
+	{
+		if (count > 0)
+			violations.put(getKey(artifact), count);
+		else
+			violations.remove(getKey(artifact));
+	}
+
+	public void save() throws IOException
+	{
+		Files.createDirectories(file.getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8))
+		{
+			writer.write(HEADER);
+			writer.newLine();
+			for (Map.Entry<String, Integer> entry : new TreeMap<>(violations).entrySet())
+			{
+				writer.write(entry.getKey() + "\t" + entry.getValue());
+				writer.newLine();
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static String getKey(Artifact artifact)
+	{
+		return artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType()
+			+ ":" + artifact.getClassifier();
+	}
+}
@@ -0,0 +1,294 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the banned classes to a JSON report and a SARIF report as they are found, and keeps an
+ * aggregated summary per artifact and package of the banned classes for the error message, so the
+ * memory used grows with the number of packages rather than with the number of banned classes.
+ * The summary is sorted by artifact, package and class, and only trimmed when it is formatted, so
+ * it does not depend on the order in which parallel scans find the banned classes.
+ * <p>
+ * The reports are only written when there are banned classes and report files are given. They
+ * are written to temporary files, which replace the reports when they are closed, and the reports
+ * of a previous run are removed when no banned classes are found. When the reports cannot be
+ * written, the summary is still kept and the error is thrown when the report is closed.
+ */
+public class ViolationReport implements Closeable
+{
+	private static final String RULE_ID = "banned-class";
+
+	private final Path jsonFile;
+
+	private final Path sarifFile;
+
+	private final String project;
+
+	private JsonWriter json;
+
+	private JsonWriter sarif;
+
+	private final Map<String, Map<String, Group>> groups = new TreeMap<>();
+
+	private long violations;
+
+	private IOException error;
+
+	/**
+	 * @param jsonFile
+	 *            the JSON report, or null to only keep the summary
+	 * @param sarifFile
+	 *            the SARIF report, or null to only keep the summary
+	 */
+	public ViolationReport(Path jsonFile, Path sarifFile, String project)
+	{
+		this.jsonFile = jsonFile;
+		this.sarifFile = sarifFile;
+		this.project = project;
+	}
+
+	private boolean isWritten()
+	{
+		return jsonFile != null && sarifFile != null;
+	}
+
+	private void open() throws IOException
+	{
+		Files.createDirectories(jsonFile.getParent());
+		Files.createDirectories(sarifFile.getParent());
+		json = new JsonWriter(
+			Files.newBufferedWriter(getTmp(jsonFile), StandardCharsets.UTF_8));
+		sarif = new JsonWriter(
+			Files.newBufferedWriter(getTmp(sarifFile), StandardCharsets.UTF_8));
+		json.beginObject().name("project").value(project).name("violations").beginArray();
+		sarif.beginObject()
+			.name("$schema")
+			.value("https://json.schemastore.org/sarif-2.1.0.json")
+			.name("version")
+			.value("2.1.0")
+			.name("runs")
+			.beginArray()
+			.beginObject()
+			.name("tool")
+			.beginObject()
+			.name("driver")
+			.beginObject()
+			.name("name")
+			.value("ban-class-usage")
+			.name("rules")
+			.beginArray()
+			.beginObject()
+			.name("id")
+			.value(RULE_ID)
+			.name("shortDescription")
+			.beginObject()
+			.name("text")
+			.value("Use of a banned class")
+			.endObject()
+			.endObject()
+			.endArray()
+			.endObject()
+			.endObject()
+			.name("results")
+			.beginArray();
+	}
+
+	private static Path getTmp(Path file)
+	{
+		return file.resolveSibling(file.getFileName() + ".tmp");
+	}
+
+	/**
+	 * Adds a banned class used by an artifact.
+	 *
+	 * @param file
+	 *            the file of the artifact, may be null
+	 * @param className
+	 *            the binary name of the banned class
+	 * @param chain
+	 *            the classes from a project class to the class that uses the banned class, or
+	 *            null when it is not known
+	 */
+	public synchronized void add(String artifact, File file, String className,
+			List<String> chain)
+	{
+		violations++;
+		addToSummary(artifact, className, chain);
+		if (!isWritten() || error != null)
+			return;
+		try
+		{
+			if (json == null)
+				open();
+			json.beginObject().name("artifact").value(artifact);
+			if (file != null)
+				json.name("file").value(file.getPath());
+			json.name("class").value(className);
+			if (chain != null)
+			{
+				json.name("chain").beginArray();
+				for (String link : chain)
+				{
+					json.value(link);
+				}
+				json.endArray();
+			}
+			json.endObject();
+
+			sarif.beginObject()
+				.name("ruleId")
+				.value(RULE_ID)
+				.name("level")
+				.value("error")
+				.name("message")
+				.beginObject()
+				.name("text")
+				.value(artifact + " uses banned class " + className
+					+ (chain == null ? "" : ", reached from " + String.join(" -> ", chain)))
+				.endObject()
+				.name("locations")
+				.beginArray()
+				.beginObject();
+			if (file != null)
+			{
+				sarif.name("physicalLocation")
+					.beginObject()
+					.name("artifactLocation")
+					.beginObject()
+					.name("uri")
+					.value(file.toURI().toString())
+					.endObject()
+					.endObject();
+			}
+			if (chain != null && !chain.isEmpty())
+			{
+				sarif.name("logicalLocations")
+					.beginArray()
+					.beginObject()
+					.name("fullyQualifiedName")
+					.value(chain.get(chain.size() - 1))
+					.name("kind")
+					.value("type")
+					.endObject()
+					.endArray();
+			}
+			sarif.endObject().endArray().endObject();
+		}
+		catch (IOException e)
+		{
+			// Reported when the report is closed, the summary is still complete
+			error = e;
+		}
+	}
+
+	private void addToSummary(String artifact, String className, List<String> chain)
+	{
+		int dot = className.lastIndexOf('.');
+		String packageName = dot < 0 ? "" : className.substring(0, dot);
+		Group group = groups.computeIfAbsent(artifact, a -> new TreeMap<>())
+			.computeIfAbsent(packageName, p -> new Group());
+		// The first class by name is shown, whichever class was found first
+		if (group.firstClass == null || className.compareTo(group.firstClass) < 0)
+		{
+			group.firstClass = className;
+			group.chain = chain;
+		}
+		group.count++;
+	}
+
+	/**
+	 * @return the number of banned classes found, counted once per artifact that uses them
+	 */
+	public synchronized long getViolations()
+	{
+		return violations;
+	}
+
+	/**
+	 * Returns the banned classes per artifact, aggregated by package, with at most the given
+	 * number of lines for the packages.
+	 */
+	public synchronized String getSummary(int maxLines)
+	{
+		StringBuilder ret = new StringBuilder();
+		int lines = 0;
+		long omitted = 0;
+		for (Map.Entry<String, Map<String, Group>> artifact : groups.entrySet())
+		{
+			if (lines >= maxLines)
+			{
+				omitted += artifact.getValue().values().stream().mapToLong(g -> g.count).sum();
+				continue;
+			}
+			ret.append("\n  Banned classes found in " + artifact.getKey() + ":\n");
+			for (Map.Entry<String, Group> entry : artifact.getValue().entrySet())
+			{
+				Group group = entry.getValue();
+				if (lines++ >= maxLines)
+				{
+					omitted += group.count;
+					continue;
+				}
+				if (group.count > 1)
+					ret.append("    " + entry.getKey() + ".* (" + group.count + " classes)\n");
+				else if (group.chain == null)
+					ret.append("    " + group.firstClass + "\n");
+				else
+					ret.append("    " + group.firstClass + " (reached from "
+						+ String.join(" -> ", group.chain) + ")\n");
+			}
+		}
+		if (omitted > 0)
+			ret.append("\n  ... and " + omitted + " more banned classes\n");
+		if (isWritten() && error == null)
+			ret.append("\n  See " + jsonFile + " or " + sarifFile + " for all " + violations
+				+ " banned classes\n");
+		return ret.toString();
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (!isWritten())
+			return;
+		if (violations == 0)
+		{
+			Files.deleteIfExists(jsonFile);
+			Files.deleteIfExists(sarifFile);
+			return;
+		}
+		if (json == null || sarif == null)
+		{
+			if (json != null)
+				json.close();
+			throw error;
+		}
+		try (JsonWriter jsonWriter = json; JsonWriter sarifWriter = sarif)
+		{
+			if (error != null)
+				throw error;
+			json.endArray().name("total").value(violations).endObject();
+			sarif.endArray().endObject().endArray().endObject();
+		}
+		Files.move(getTmp(jsonFile), jsonFile, StandardCopyOption.REPLACE_EXISTING);
+		Files.move(getTmp(sarifFile), sarifFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static final class Group
+	{
+		private String firstClass;
+
+		private List<String> chain;
+
+		private long count;
+	}
+}
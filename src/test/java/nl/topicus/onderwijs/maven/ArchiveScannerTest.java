@@ -0,0 +1,202 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that the {@link ArchiveScanner} only scans the class files a JVM of the target release
+ * would load from a multi-release jar, and only the base versions when the manifest does not make
+ * it a multi-release jar. Also checks that it scans the jars nested in a war and in a Spring Boot
+ * jar, sharing the results of a nested jar that is in both.
+ */
+public class ArchiveScannerTest
+{
+	private static final Set<String> BASE = references(Base.class);
+
+	private static final Set<String> JAVA_9 = references(Java9.class);
+
+	private static final Set<String> JAVA_11 = references(Java11.class);
+
+	private static final Set<String> ONLY_11 = references(Only11.class);
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("archives");
+		try
+		{
+			Map<String, byte[]> entries = new LinkedHashMap<>();
+			entries.put("META-INF/MANIFEST.MF", manifest("Multi-Release: true"));
+			entries.put("a/A.class", classFile(Base.class));
+			entries.put("META-INF/versions/9/a/A.class", classFile(Java9.class));
+			entries.put("META-INF/versions/11/a/A.class", classFile(Java11.class));
+			entries.put("META-INF/versions/11/a/Only.class", classFile(Only11.class));
+			entries.put("META-INF/versions/x/a/A.class", classFile(Java11.class));
+			File multiRelease = write(directory.resolve("multi-release.jar"), entries, false);
+
+			check(scan(multiRelease, null), union(BASE, JAVA_9, JAVA_11, ONLY_11), "all versions");
+			check(scan(multiRelease, 8), BASE, "release 8");
+			check(scan(multiRelease, 10), JAVA_9, "release 10");
+			check(scan(multiRelease, 11), union(JAVA_11, ONLY_11), "release 11");
+			check(scan(multiRelease, 17), union(JAVA_11, ONLY_11), "release 17");
+
+			// Without the attribute the versions are resources the JVM does not load
+			entries.put("META-INF/MANIFEST.MF", manifest("Created-By: test"));
+			File plain = write(directory.resolve("plain.jar"), entries, false);
+			check(scan(plain, 11), BASE, "release 11 of a jar that is not multi-release");
+			entries.remove("META-INF/MANIFEST.MF");
+			File noManifest = write(directory.resolve("no-manifest.jar"), entries, false);
+			check(scan(noManifest, 11), BASE, "release 11 of a jar without a manifest");
+
+			byte[] library = Files.readAllBytes(
+				write(directory.resolve("library.jar"), Map.of("b/B.class", classFile(Java9.class)),
+					false).toPath());
+			File war = write(directory.resolve("app.war"),
+				Map.of("WEB-INF/classes/c/C.class", classFile(Base.class),
+					"WEB-INF/lib/library.jar", library),
+				false);
+			// Spring Boot stores nested jars uncompressed, so they are read in place
+			File bootJar = write(directory.resolve("app.jar"),
+				Map.of("BOOT-INF/classes/c/C.class", classFile(Java11.class),
+					"BOOT-INF/lib/library.jar", library),
+				true);
+			Map<String, Set<String>> nestedResults = new ConcurrentHashMap<>();
+			ArchiveScanner scanner = newScanner(null, nestedResults);
+			check(scanner.scan(war), union(BASE, JAVA_9), "the war");
+			check(scanner.scan(bootJar), union(JAVA_11, JAVA_9), "the Spring Boot jar");
+			if (scanner.getNestedScanned() != 1 || scanner.getNestedReused() != 1)
+				throw new AssertionError("Scanned " + scanner.getNestedScanned()
+					+ " nested jars and reused " + scanner.getNestedReused() + ", expected 1 each");
+			System.out.println("Checked the multi-release and nested archives");
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static Set<String> scan(File jar, Integer targetRelease) throws IOException
+	{
+		return newScanner(targetRelease, new ConcurrentHashMap<>()).scan(jar);
+	}
+
+	private static ArchiveScanner newScanner(Integer targetRelease,
+			Map<String, Set<String>> nestedResults)
+	{
+		return new ArchiveScanner(ScanEngine.ASM, ScanDepth.FULL, null, targetRelease,
+			"test:" + targetRelease, nestedResults, new ConsoleLog(false));
+	}
+
+	private static void check(Set<String> scanned, Set<String> expected, String description)
+	{
+		if (!scanned.equals(expected))
+		{
+			Set<String> missing = new HashSet<>(expected);
+			missing.removeAll(scanned);
+			Set<String> unexpected = new HashSet<>(scanned);
+			unexpected.removeAll(expected);
+			throw new AssertionError("Scanned other classes for " + description + ", missing "
+				+ missing + ", unexpected " + unexpected);
+		}
+	}
+
+	@SafeVarargs
+	private static Set<String> union(Set<String>... sets)
+	{
+		Set<String> ret = new HashSet<>();
+		for (Set<String> set : sets)
+		{
+			ret.addAll(set);
+		}
+		return ret;
+	}
+
+	private static File write(Path jar, Map<String, byte[]> entries, boolean stored)
+			throws IOException
+	{
+		try (OutputStream file = Files.newOutputStream(jar);
+				ZipOutputStream out = new ZipOutputStream(file))
+		{
+			for (Map.Entry<String, byte[]> entry : entries.entrySet())
+			{
+				ZipEntry zipEntry = new ZipEntry(entry.getKey());
+				if (stored)
+				{
+					CRC32 crc = new CRC32();
+					crc.update(entry.getValue());
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(entry.getValue().length);
+					zipEntry.setCrc(crc.getValue());
+				}
+				out.putNextEntry(zipEntry);
+				out.write(entry.getValue());
+			}
+		}
+		return jar.toFile();
+	}
+
+	private static byte[] manifest(String attribute)
+	{
+		return ("Manifest-Version: 1.0\r\n" + attribute + "\r\n\r\n")
+			.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] classFile(Class<?> type)
+	{
+		String name = type.getName();
+		try (InputStream in =
+			type.getResourceAsStream(name.substring(name.lastIndexOf('.') + 1) + ".class"))
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			in.transferTo(out);
+			return out.toByteArray();
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static Set<String> references(Class<?> type)
+	{
+		return ScanEngine.ASM.collect(classFile(type));
+	}
+
+	static class Base
+	{
+		java.util.zip.Adler32 checksum;
+	}
+
+	static class Java9
+	{
+		java.util.zip.CRC32C checksum;
+	}
+
+	static class Java11
+	{
+		java.util.zip.Deflater deflater;
+	}
+
+	static class Only11
+	{
+		java.util.zip.Inflater inflater;
+	}
+}
@@ -0,0 +1,99 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Checks that a {@link ClassDirectoryScanner} finds the same references when it splits the class
+ * files over an executor as on the calling thread, also when the scan itself runs on the only
+ * thread of the executor and when the in-flight limit is smaller than a single class file.
+ */
+public class ClassDirectoryScannerTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("class-directory");
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try
+		{
+			int classFiles = 0;
+			for (String jar : args.length > 0 ? Arrays.asList(args) : classPathJars())
+			{
+				classFiles += extract(new File(jar), directory);
+			}
+			if (classFiles < 1_000)
+				throw new AssertionError("Only " + classFiles + " class files found");
+
+			Set<String> expected = newScanner().scan(directory, null);
+			ClassDirectoryScanner parallel = newScanner();
+			parallel.setExecutor(executor, 4, new InflightBytes(1L << 20));
+			check(parallel.scan(directory, null), expected, "the executor");
+
+			// The tasks on the executor only start once the scan is done
+			Future<Set<String>> nested = single.submit(() -> {
+				ClassDirectoryScanner scanner = newScanner();
+				scanner.setExecutor(single, 4, new InflightBytes(1));
+				return scanner.scan(directory, null);
+			});
+			check(nested.get(60, TimeUnit.SECONDS), expected, "the executor it runs on");
+			System.out.println("Scanned " + classFiles + " class files");
+		}
+		finally
+		{
+			executor.shutdownNow();
+			single.shutdownNow();
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static ClassDirectoryScanner newScanner()
+	{
+		return new ClassDirectoryScanner(ScanEngine.ASM, ScanDepth.FULL, null, "test",
+			new ConsoleLog(false));
+	}
+
+	private static void check(Set<String> scanned, Set<String> expected, String description)
+	{
+		if (!scanned.equals(expected))
+			throw new AssertionError("Found " + scanned.size() + " references using "
+				+ description + ", expected " + expected.size());
+	}
+
+	private static Iterable<String> classPathJars()
+	{
+		return Stream.of(System.getProperty("java.class.path").split(File.pathSeparator))
+			.filter(entry -> entry.endsWith(".jar"))
+			::iterator;
+	}
+
+	private static int extract(File jar, Path directory) throws IOException
+	{
+		int[] count = new int[1];
+		try (JarReader reader = new JarReader(jar))
+		{
+			reader.forEachEntry(entry -> {
+				if (!entry.isClass() || entry.isDirectory() || entry.getName().contains(".."))
+					return;
+				Path file = directory.resolve(entry.getName());
+				Files.createDirectories(file.getParent());
+				Files.write(file, Arrays.copyOf(entry.read(), (int) entry.getSize()));
+				count[0]++;
+			});
+		}
+		return count[0];
+	}
+}
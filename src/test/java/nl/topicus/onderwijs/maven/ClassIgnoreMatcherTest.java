@@ -0,0 +1,118 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+/**
+ * Checks that {@link ClassIgnoreMatcher} ignores the same classes as the regular expressions from
+ * {@link BanClassUsage#asRegex(String)} it replaced, that it only ignores all classes when every
+ * class matches, and that the classifier of an ignored dependency is matched against artifacts
+ * without a classifier. The names and wildcards are generated from a small alphabet, so the edge
+ * cases, such as empty names, wildcards in the middle, <code>?</code> and <code>$</code>, are all
+ * covered.
+ */
+public class ClassIgnoreMatcherTest
+{
+	private static final Random random = new Random(42);
+
+	public static void main(String[] args)
+	{
+		List<String> names = new ArrayList<>();
+		names.add("");
+		for (int index = 0; index < 2_000; index++)
+		{
+			names.add(generate("ab/$C", 7));
+		}
+
+		int checks = 0;
+		for (int round = 0; round < 2_000; round++)
+		{
+			List<String> ignores = new ArrayList<>();
+			List<Pattern> regexes = new ArrayList<>();
+			for (int pattern = random.nextInt(4); pattern >= 0; pattern--)
+			{
+				String ignore = generate("ab.$C*?", 5).replace('.', '/');
+				ignores.add(ignore);
+				regexes.add(Pattern.compile(BanClassUsage.asRegex(ignore)));
+			}
+			ClassIgnoreMatcher ignored = new ClassIgnoreMatcher(ignores);
+			boolean ignoresAll = true;
+			for (String name : names)
+			{
+				boolean expected =
+					regexes.stream().anyMatch(regex -> regex.matcher(name).matches());
+				ignoresAll &= expected;
+				if (ignored.isIgnored(name) != expected)
+					throw new AssertionError("Ignored " + ignores + " differs for " + name);
+				checks++;
+			}
+			if (ignored.ignoresAll() && !ignoresAll)
+				throw new AssertionError(ignores + " does not ignore all classes");
+		}
+		check(new ClassIgnoreMatcher(List.of("*")).ignoresAll(), "* ignores all");
+		check(new ClassIgnoreMatcher(List.of("a/b", "**")).ignoresAll(), "** ignores all");
+		check(!new ClassIgnoreMatcher(List.of("a*")).ignoresAll(), "a* does not ignore all");
+		check(!new ClassIgnoreMatcher(List.of("")).ignoresAll(), "empty does not ignore all");
+
+		checkClassifier();
+		System.out.println("Compared " + checks + " matches");
+	}
+
+	/**
+	 * The original check compared the classifier pattern to the classifier of the artifact, which
+	 * failed for artifacts without a classifier. It is now compared to the empty string instead.
+	 */
+	private static void checkClassifier()
+	{
+		Artifact withoutClassifier = artifact(null);
+		Artifact emptyClassifier = artifact("");
+		Artifact tests = artifact("tests");
+		IgnoreRules.IgnorableDependency any = new IgnoreRules.IgnorableDependency();
+		check(any.matchesArtifact(withoutClassifier) && any.matchesArtifact(tests),
+			"no classifier pattern matches all classifiers");
+		IgnoreRules.IgnorableDependency empty = dependency("");
+		check(empty.matchesArtifact(withoutClassifier), "empty matches no classifier");
+		check(empty.matchesArtifact(emptyClassifier), "empty matches the empty classifier");
+		check(!empty.matchesArtifact(tests), "empty does not match tests");
+		IgnoreRules.IgnorableDependency wildcard = dependency("*");
+		check(wildcard.matchesArtifact(withoutClassifier) && wildcard.matchesArtifact(tests),
+			"* matches all classifiers");
+		check(!dependency("tests").matchesArtifact(withoutClassifier),
+			"tests does not match no classifier");
+	}
+
+	private static IgnoreRules.IgnorableDependency dependency(String classifier)
+	{
+		IgnoreRules.IgnorableDependency ret = new IgnoreRules.IgnorableDependency();
+		ret.classifier = Pattern.compile(BanClassUsage.asRegex(classifier));
+		return ret;
+	}
+
+	private static Artifact artifact(String classifier)
+	{
+		return new DefaultArtifact("g", "a", "1", Artifact.SCOPE_COMPILE, "jar", classifier,
+			new DefaultArtifactHandler("jar"));
+	}
+
+	private static String generate(String alphabet, int maxLength)
+	{
+		StringBuilder ret = new StringBuilder();
+		for (int index = random.nextInt(maxLength + 1); index > 0; index--)
+		{
+			ret.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return ret.toString();
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,76 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that {@link ClassNameMatcher} matches the same classes as the original check it
+ * replaced: a prefix match on the binary name for wildcards ending with <code>*</code>, and an
+ * exact match otherwise. The names and wildcards are generated from a small alphabet, so the edge
+ * cases, such as empty names, wildcards in the middle and <code>$</code>, are all covered.
+ */
+public class ClassNameMatcherTest
+{
+	private static final Random random = new Random(42);
+
+	public static void main(String[] args)
+	{
+		List<String> names = new ArrayList<>();
+		names.add("");
+		for (int index = 0; index < 2_000; index++)
+		{
+			names.add(generate("ab/$C", 7));
+		}
+
+		int checks = 0;
+		for (int round = 0; round < 2_000; round++)
+		{
+			List<String> patterns = new ArrayList<>();
+			for (int pattern = random.nextInt(4); pattern >= 0; pattern--)
+			{
+				patterns.add(generate("ab.$C*?", 5));
+			}
+			ClassNameMatcher banned = new ClassNameMatcher(patterns);
+			for (String name : names)
+			{
+				if (banned.matches(name) != isBanned(patterns, name.replace('/', '.')))
+					throw new AssertionError("Banned " + patterns + " differs for " + name);
+				checks++;
+			}
+		}
+		if (new ClassNameMatcher(null).matches("a/B"))
+			throw new AssertionError("Matched without banned classes");
+		System.out.println("Compared " + checks + " matches");
+	}
+
+	/**
+	 * The check on banned classes before they were compiled into a {@link ClassNameMatcher}.
+	 */
+	private static boolean isBanned(List<String> bannedClasses, String classname)
+	{
+		for (String bannedClass : bannedClasses)
+		{
+			if (bannedClass.endsWith("*"))
+			{
+				if (classname.startsWith(bannedClass.substring(0, bannedClass.length() - 1)))
+					return true;
+			}
+			else if (classname.equals(bannedClass))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String generate(String alphabet, int maxLength)
+	{
+		StringBuilder ret = new StringBuilder();
+		for (int index = random.nextInt(maxLength + 1); index > 0; index--)
+		{
+			ret.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return ret.toString();
+	}
+}
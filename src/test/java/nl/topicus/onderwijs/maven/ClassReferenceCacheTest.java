@@ -0,0 +1,141 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+/**
+ * Checks that an entry of the {@link ClassReferenceCache} is only found for the same jar scanned
+ * with the same options, that a truncated entry is removed instead of read, and that eviction
+ * removes the least recently used entries first.
+ */
+public class ClassReferenceCacheTest
+{
+	private static final Set<String> REFERENCES =
+		Set.of("java/lang/Object", "java/lang/String", "org/example/Foo", "org/example/Foo$Bar");
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("refs-cache");
+		try
+		{
+			Path cacheDirectory = directory.resolve("cache");
+			ClassReferenceCache cache = new ClassReferenceCache(cacheDirectory, Long.MAX_VALUE);
+			Path jar = directory.resolve("lib-1.0.jar");
+			Files.write(jar, new byte[] {1, 2, 3, 4});
+			Artifact artifact = artifact(jar);
+
+			String key = cache.getKey(artifact, "FULL");
+			check(cache.get(key) == null, "Found an entry before it was put");
+			cache.put(key, REFERENCES);
+			check(REFERENCES.equals(cache.get(key)), "Read other references than were put");
+			check(key.equals(cache.getKey(artifact, "FULL")), "The key of the same jar changed");
+
+			check(!key.equals(cache.getKey(artifact, "API")),
+				"The scan options are not in the key");
+			check(cache.get(cache.getKey(artifact, "API")) == null,
+				"Found an entry for other scan options");
+			Files.write(jar, new byte[] {1, 2, 3, 5});
+			String changed = cache.getKey(artifact, "FULL");
+			check(!key.equals(changed), "The key did not change with the contents of the jar");
+			check(cache.get(changed) == null, "Found an entry for a changed jar");
+			Files.write(jar, new byte[] {1, 2, 3, 4, 5});
+			check(cache.get(cache.getKey(artifact, "FULL")) == null,
+				"Found an entry for a jar with another size");
+			Files.write(jar, new byte[] {1, 2, 3, 4});
+			check(REFERENCES.equals(cache.get(cache.getKey(artifact, "FULL"))),
+				"Did not find the entry of the restored jar");
+
+			Path entry = entries(cacheDirectory).get(0);
+			byte[] contents = Files.readAllBytes(entry);
+			Files.write(entry, Arrays.copyOf(contents, contents.length / 2));
+			check(cache.get(key) == null, "Read a truncated entry");
+			check(!Files.exists(entry), "Did not remove a truncated entry");
+
+			evict(directory.resolve("evict"));
+			System.out.println("Checked the class reference cache");
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	/**
+	 * Puts four entries of the same size, reads the oldest one, and checks that eviction to the
+	 * size of two entries keeps the one that was read and the most recent one.
+	 */
+	private static void evict(Path cacheDirectory) throws IOException
+	{
+		ClassReferenceCache filler = new ClassReferenceCache(cacheDirectory, Long.MAX_VALUE);
+		long now = System.currentTimeMillis();
+		for (int index = 0; index < 4; index++)
+		{
+			filler.put("key" + index, REFERENCES);
+			Path entry = entries(cacheDirectory).stream()
+				.filter(path -> !isOlderThan(path, now - 60_000))
+				.findFirst()
+				.orElseThrow();
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(now - 100_000 + index * 10_000));
+		}
+		long entrySize = Files.size(entries(cacheDirectory).get(0));
+		ClassReferenceCache cache = new ClassReferenceCache(cacheDirectory, 2 * entrySize);
+		check(cache.get("key0") != null, "Did not find the oldest entry");
+		cache.evict();
+		check(entries(cacheDirectory).size() == 2, "Did not evict to the maximum size");
+		check(cache.get("key0") != null, "Evicted an entry that was just read");
+		check(cache.get("key3") != null, "Evicted the most recent entry");
+		check(cache.get("key1") == null && cache.get("key2") == null,
+			"Kept a least recently used entry");
+	}
+
+	private static boolean isOlderThan(Path path, long millis)
+	{
+		try
+		{
+			return Files.getLastModifiedTime(path).toMillis() < millis;
+		}
+		catch (IOException e)
+		{
+			throw new AssertionError(e);
+		}
+	}
+
+	private static List<Path> entries(Path cacheDirectory) throws IOException
+	{
+		try (Stream<Path> files = Files.walk(cacheDirectory))
+		{
+			return files.filter(path -> path.getFileName().toString().endsWith(".refs"))
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static Artifact artifact(Path jar)
+	{
+		Artifact artifact = new DefaultArtifact("org.example", "lib", "1.0", Artifact.SCOPE_COMPILE,
+			"jar", null, new DefaultArtifactHandler("jar"));
+		artifact.setFile(jar.toFile());
+		return artifact;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
@@ -0,0 +1,108 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.maven.enforcer.rule.api.EnforcerRuleException;
+
+/**
+ * Checks that class names, including the class references of the given jars, survive a round
+ * trip through a <code>classrefs</code> file, that they are not read for another jar, and that
+ * {@link PublishClassReferences#checkJar(File, Path)} only accepts a jar with the classes of the
+ * output directory.
+ */
+public class ClassReferencesFileTest
+{
+	private static final String SHA1 = "0123456789abcdef0123456789abcdef01234567";
+
+	private static final String OTHER_SHA1 = "1123456789abcdef0123456789abcdef01234567";
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("classrefs");
+		try
+		{
+			Path file = directory.resolve("test.classrefs");
+			roundTrip(file, Set.of());
+			Set<String> names = new TreeSet<>();
+			names.add("a");
+			names.add("a/b/C");
+			names.add("a/b/C$1");
+			names.add("a/b/D\u00e9");
+			names.add("x".repeat(0xFFF0));
+			names.add("x".repeat(0xFFF0) + "/Y");
+			roundTrip(file, names);
+			for (String jar : args)
+			{
+				ArchiveScanner scanner = new ArchiveScanner(ScanEngine.ASM, ScanDepth.FULL, null,
+					null, "classrefs", new ConcurrentHashMap<>(), new ConsoleLog(false));
+				roundTrip(file, scanner.scan(new File(jar)));
+			}
+
+			Path classes = Files.createDirectories(directory.resolve("classes/a"));
+			Files.write(classes.resolve("A.class"), new byte[] {1, 2, 3});
+			Path jar = directory.resolve("a.jar");
+			writeJar(jar, new byte[] {1, 2, 3}, null);
+			PublishClassReferences.checkJar(jar.toFile(), directory.resolve("classes"));
+			writeJar(jar, new byte[] {1, 2, 4}, null);
+			expectRejected(jar, directory.resolve("classes"));
+			writeJar(jar, new byte[] {1, 2, 3}, "shaded/B.class");
+			expectRejected(jar, directory.resolve("classes"));
+			System.out.println("Checked the classrefs files");
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static void roundTrip(Path file, Set<String> names) throws IOException
+	{
+		ClassReferencesFile.write(file, SHA1, names);
+		Set<String> read = ClassReferencesFile.read(file, SHA1);
+		if (read == null || !read.equals(names))
+			throw new AssertionError("Read " + (read == null ? "no" : read.size())
+				+ " names, wrote " + names.size());
+		if (ClassReferencesFile.read(file, OTHER_SHA1) != null)
+			throw new AssertionError("Read the names for another jar");
+	}
+
+	private static void writeJar(Path jar, byte[] contents, String extraClass) throws IOException
+	{
+		try (OutputStream file = Files.newOutputStream(jar);
+				ZipOutputStream out = new ZipOutputStream(file))
+		{
+			out.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+			out.putNextEntry(new ZipEntry("a/A.class"));
+			out.write(contents);
+			if (extraClass != null)
+				out.putNextEntry(new ZipEntry(extraClass));
+		}
+	}
+
+	private static void expectRejected(Path jar, Path classes)
+	{
+		try
+		{
+			PublishClassReferences.checkJar(jar.toFile(), classes);
+		}
+		catch (EnforcerRuleException e)
+		{
+			return;
+		}
+		throw new AssertionError("Accepted a jar that differs from the output directory");
+	}
+}
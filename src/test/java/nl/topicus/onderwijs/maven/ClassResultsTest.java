@@ -0,0 +1,79 @@
+package nl.topicus.onderwijs.maven;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Checks that {@link ClassResults} only reuses a result for a class file with the same CRC, size
+ * and name, that a result is only kept from the second time a class file is seen, and that the
+ * results are dropped once the limit is reached.
+ */
+public class ClassResultsTest
+{
+	private static final long CRC = 0xFFFFFFF0L;
+
+	private static final long SIZE = 1234;
+
+	private static final String NAME = "org/example/Foo.class";
+
+	public static void main(String[] args)
+	{
+		SymbolTable symbols = new SymbolTable();
+		IntSet references = new IntSet();
+		references.add(symbols.intern("java/lang/Object"));
+		references.add(symbols.intern("org/example/Bar"));
+		Set<String> expected = Set.of("java/lang/Object", "org/example/Bar");
+
+		ClassResults results = new ClassResults();
+		check(results.get(CRC, SIZE, NAME) == null, "Found a result before it was put");
+		results.put(CRC, SIZE, NAME, references, symbols);
+		check(results.get(CRC, SIZE, NAME) == null, "Kept the result of the first sighting");
+		results.put(CRC, SIZE, NAME, references, symbols);
+		check(expected.equals(names(results.get(CRC, SIZE, NAME))),
+			"Did not keep the result of the second sighting");
+
+		// Another class file with the same CRC and size is a collision, not the same class
+		String other = "org/example/Other.class";
+		check(results.get(CRC, SIZE, other) == null, "Reused the result of another class name");
+		IntSet otherReferences = new IntSet();
+		otherReferences.add(symbols.intern("org/example/Banned"));
+		results.put(CRC, SIZE, other, otherReferences, symbols);
+		results.put(CRC, SIZE, other, otherReferences, symbols);
+		check(results.get(CRC, SIZE, other) == null, "Kept the result of a colliding class");
+		check(expected.equals(names(results.get(CRC, SIZE, NAME))),
+			"Replaced a result with the result of a colliding class");
+		check(results.get(CRC, SIZE + 1, NAME) == null, "Reused a result for another size");
+		check(results.get(CRC ^ 1, SIZE, NAME) == null, "Reused a result for another CRC");
+		check(results.get(0, CRC << 32 ^ SIZE, NAME) == null,
+			"Reused a result for a key that overlaps the CRC");
+
+		ClassResults limited = new ClassResults(2);
+		for (int index = 0; index < 2; index++)
+		{
+			limited.put(index, SIZE, NAME, references, symbols);
+			limited.put(index, SIZE, NAME, references, symbols);
+		}
+		check(limited.get(0, SIZE, NAME) != null && limited.get(1, SIZE, NAME) != null,
+			"Dropped results below the limit");
+		limited.put(1, SIZE, NAME, references, symbols);
+		check(limited.get(0, SIZE, NAME) != null, "Dropped results for a known class file");
+		limited.put(2, SIZE, NAME, references, symbols);
+		check(limited.get(0, SIZE, NAME) == null && limited.get(1, SIZE, NAME) == null,
+			"Did not drop the results at the limit");
+		limited.put(2, SIZE, NAME, references, symbols);
+		check(limited.get(2, SIZE, NAME) != null, "Did not keep results after the limit");
+		System.out.println("Checked the class results");
+	}
+
+	private static Set<String> names(String[] names)
+	{
+		return names == null ? null : new TreeSet<>(Arrays.asList(names));
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
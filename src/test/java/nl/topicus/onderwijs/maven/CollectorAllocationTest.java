@@ -0,0 +1,241 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Checks that visiting a class with a reused {@link ClassDependencyCollector} does not allocate
+ * more than visiting it with visitors that do nothing, once all names are in the
+ * {@link SymbolTable}. What ASM itself allocates while reading the class is the same for both.
+ */
+public class CollectorAllocationTest
+{
+	private static final int ROUNDS = 20;
+
+	/**
+	 * Allowed difference, to leave room for the occasional growth of the sets.
+	 */
+	private static final long MAX_BYTES_PER_CLASS = 16;
+
+	private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception
+	{
+		List<byte[]> classFiles = new ArrayList<>();
+		List<Class< ? >> fixtures = new ArrayList<>();
+		fixtures.add(CollectorTest.class);
+		fixtures.addAll(List.of(CollectorTest.class.getDeclaredClasses()));
+		fixtures.addAll(List.of(java.util.HashMap.class, java.util.stream.Collectors.class,
+			java.util.concurrent.ConcurrentHashMap.class, java.lang.annotation.Retention.class));
+		for (Class< ? > fixture : fixtures)
+		{
+			String resource = fixture.getName().replace('.', '/') + ".class";
+			try (InputStream is = ClassLoader.getSystemResourceAsStream(resource))
+			{
+				classFiles.add(is.readAllBytes());
+			}
+		}
+		readJar(new File(ClassReader.class.getProtectionDomain().getCodeSource().getLocation()
+			.toURI()), classFiles);
+
+		SymbolTable symbols = new SymbolTable();
+		IntSet ids = new IntSet();
+		ClassDependencyCollector collector = new ClassDependencyCollector(symbols, ids);
+		ClassVisitor baseline = new NoopClassVisitor();
+
+		// Warm up, and intern all names
+		measure(classFiles, collector, ids);
+		measure(classFiles, baseline, ids);
+
+		long collectorBytes = Long.MAX_VALUE;
+		long baselineBytes = Long.MAX_VALUE;
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			collectorBytes = Math.min(collectorBytes, measure(classFiles, collector, ids));
+			baselineBytes = Math.min(baselineBytes, measure(classFiles, baseline, ids));
+		}
+
+		long perClass = (collectorBytes - baselineBytes) / classFiles.size();
+		System.out.println("Visited " + classFiles.size() + " classes, the collector allocated "
+			+ collectorBytes + " bytes, visitors that do nothing " + baselineBytes + " bytes");
+		if (perClass > MAX_BYTES_PER_CLASS)
+		{
+			throw new AssertionError("The collector allocates " + perClass
+				+ " bytes per class more than visitors that do nothing");
+		}
+	}
+
+	private static void readJar(File file, List<byte[]> classFiles) throws IOException
+	{
+		try (JarFile jarFile = new JarFile(file))
+		{
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements())
+			{
+				JarEntry entry = entries.nextElement();
+				if (entry.getName().endsWith(".class")
+					&& !entry.getName().endsWith("module-info.class"))
+				{
+					try (InputStream is = jarFile.getInputStream(entry))
+					{
+						classFiles.add(is.readAllBytes());
+					}
+				}
+			}
+		}
+	}
+
+	private static long measure(List<byte[]> classFiles, ClassVisitor visitor, IntSet ids)
+	{
+		long threadId = Thread.currentThread().getId();
+		long before = THREADS.getThreadAllocatedBytes(threadId);
+		for (byte[] classFile : classFiles)
+		{
+			ids.clear();
+			new ClassReader(classFile).accept(visitor,
+				ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+		}
+		return THREADS.getThreadAllocatedBytes(threadId) - before;
+	}
+
+	private static class NoopAnnotationVisitor extends AnnotationVisitor
+	{
+		private NoopAnnotationVisitor()
+		{
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String name, String descriptor)
+		{
+			return this;
+		}
+
+		@Override
+		public AnnotationVisitor visitArray(String name)
+		{
+			return this;
+		}
+	}
+
+	private static class NoopClassVisitor extends ClassVisitor
+	{
+		private final AnnotationVisitor annotationVisitor = new NoopAnnotationVisitor();
+
+		private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM9)
+		{
+			@Override
+			public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath,
+					String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+		};
+
+		private final MethodVisitor methodVisitor = new MethodVisitor(Opcodes.ASM9)
+		{
+			@Override
+			public AnnotationVisitor visitAnnotationDefault()
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath,
+					String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor,
+					boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath,
+					String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath,
+					String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+
+			@Override
+			public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath,
+					Label[] start, Label[] end, int[] index, String descriptor, boolean visible)
+			{
+				return annotationVisitor;
+			}
+		};
+
+		private NoopClassVisitor()
+		{
+			super(Opcodes.ASM9);
+		}
+
+		@Override
+		public AnnotationVisitor visitAnnotation(String descriptor, boolean visible)
+		{
+			return annotationVisitor;
+		}
+
+		@Override
+		public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath,
+				String descriptor, boolean visible)
+		{
+			return annotationVisitor;
+		}
+
+		@Override
+		public FieldVisitor visitField(int access, String name, String descriptor,
+				String signature, Object value)
+		{
+			return fieldVisitor;
+		}
+
+		@Override
+		public MethodVisitor visitMethod(int access, String name, String descriptor,
+				String signature, String[] exceptions)
+		{
+			return methodVisitor;
+		}
+	}
+}
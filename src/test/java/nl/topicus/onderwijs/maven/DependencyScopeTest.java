@@ -0,0 +1,81 @@
+package nl.topicus.onderwijs.maven;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.shared.dependency.graph.DependencyNode;
+
+/**
+ * Checks that only the dependencies with a checked scope are returned when walking the dependency
+ * tree, in the order of the class path, and that the dependencies of an artifact with a scope
+ * that is not checked are still walked when they can have a checked scope, such as the runtime
+ * dependencies of a compile dependency.
+ */
+public class DependencyScopeTest
+{
+	private static final ConsoleLog log = new ConsoleLog(false);
+
+	public static void main(String[] args)
+	{
+		DependencyNode tree = node(null,
+			node(artifact("compile-lib", Artifact.SCOPE_COMPILE),
+				node(artifact("runtime-child", Artifact.SCOPE_RUNTIME),
+					node(artifact("runtime-grandchild", Artifact.SCOPE_RUNTIME))),
+				node(artifact("compile-child", Artifact.SCOPE_COMPILE))),
+			node(artifact("test-lib", Artifact.SCOPE_TEST),
+				node(artifact("test-child", Artifact.SCOPE_TEST))),
+			node(artifact("provided-lib", Artifact.SCOPE_PROVIDED)));
+
+		check(tree, List.of(Artifact.SCOPE_RUNTIME), "runtime-child", "runtime-grandchild");
+		check(tree, List.of(Artifact.SCOPE_COMPILE), "compile-lib", "compile-child");
+		check(tree, List.of(Artifact.SCOPE_TEST), "test-lib", "test-child");
+		check(tree, null, "compile-lib", "runtime-child", "runtime-grandchild", "compile-child",
+			"test-lib", "test-child", "provided-lib");
+
+		if (BanClassUsage.canHaveScope(Artifact.SCOPE_TEST, List.of(Artifact.SCOPE_RUNTIME)))
+			throw new AssertionError("Test dependencies cannot have runtime dependencies");
+		if (!BanClassUsage.canHaveScope("custom", List.of(Artifact.SCOPE_RUNTIME)))
+			throw new AssertionError("Dependencies with an unknown scope must be walked");
+		System.out.println("Checked the scopes of the dependencies");
+	}
+
+	private static void check(DependencyNode tree, List<String> scopes, String... expected)
+	{
+		List<String> actual = BanClassUsage.getDescendants(tree, scopes, log)
+			.stream()
+			.map(Artifact::getArtifactId)
+			.collect(Collectors.toList());
+		if (!actual.equals(List.of(expected)))
+			throw new AssertionError("Found " + actual + " for " + scopes + ", expected "
+				+ List.of(expected));
+	}
+
+	private static Artifact artifact(String artifactId, String scope)
+	{
+		return new DefaultArtifact("g", artifactId, "1", scope, "jar", null,
+			new DefaultArtifactHandler("jar"));
+	}
+
+	/**
+	 * Returns a node that only implements the methods used to walk the tree.
+	 */
+	private static DependencyNode node(Artifact artifact, DependencyNode... children)
+	{
+		return (DependencyNode) Proxy.newProxyInstance(DependencyScopeTest.class.getClassLoader(),
+			new Class< ? >[] {DependencyNode.class}, (proxy, method, methodArgs) -> {
+				switch (method.getName())
+				{
+					case "getArtifact":
+						return artifact;
+					case "getChildren":
+						return List.of(children);
+					default:
+						throw new UnsupportedOperationException(method.getName());
+				}
+			});
+	}
+}
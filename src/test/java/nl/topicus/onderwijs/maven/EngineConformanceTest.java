@@ -0,0 +1,127 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Checks that all {@link ScanEngine}s collect the same dependencies at every {@link ScanDepth},
+ * with and without a {@link SymbolTable} and a reused collector, for the {@link CollectorTest}
+ * fixtures and for every class in the given jars, or in the jars on the class path when no jars
+ * are given.
+ */
+public class EngineConformanceTest
+{
+	private static int classes;
+
+	private static final List<String> failures = new ArrayList<>();
+
+	private static final SymbolTable symbols = new SymbolTable();
+
+	private static final IntSet ids = new IntSet();
+
+	private static final Map<String, ScanEngine.Collector> collectors = new HashMap<>();
+
+	public static void main(String[] args) throws Exception
+	{
+		List<Class< ? >> fixtures = new ArrayList<>();
+		fixtures.add(CollectorTest.class);
+		fixtures.addAll(List.of(CollectorTest.class.getDeclaredClasses()));
+		for (Class< ? > fixture : fixtures)
+		{
+			String resource = fixture.getName().replace('.', '/') + ".class";
+			try (InputStream is = fixture.getClassLoader().getResourceAsStream(resource))
+			{
+				compare(resource, is.readAllBytes());
+			}
+		}
+
+		List<String> jars = new ArrayList<>(List.of(args));
+		if (jars.isEmpty())
+		{
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+			{
+				if (entry.endsWith(".jar"))
+					jars.add(entry);
+			}
+		}
+		for (String jar : jars)
+		{
+			compareJar(new File(jar));
+		}
+
+		System.out.println("Compared " + classes + " classes in " + jars.size() + " jars");
+		if (!failures.isEmpty())
+		{
+			failures.forEach(System.out::println);
+			throw new AssertionError(failures.size() + " classes differ between engines");
+		}
+	}
+
+	private static void compareJar(File file) throws IOException
+	{
+		try (JarFile jarFile = new JarFile(file))
+		{
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements())
+			{
+				JarEntry entry = entries.nextElement();
+				if (!entry.isDirectory() && entry.getName().endsWith(".class"))
+				{
+					try (InputStream is = jarFile.getInputStream(entry))
+					{
+						compare(file.getName() + "!" + entry.getName(), is.readAllBytes());
+					}
+				}
+			}
+		}
+	}
+
+	private static void compare(String name, byte[] classFile)
+	{
+		classes++;
+		for (ScanDepth depth : ScanDepth.values())
+		{
+			ClassDependencyCollector reference = new ClassDependencyCollector(null, null, depth);
+			reference.collect(classFile, 0, classFile.length);
+			Set<String> expected = new TreeSet<>(reference.getDeps());
+			for (ScanEngine engine : ScanEngine.values())
+			{
+				if (depth == ScanDepth.FULL)
+					check(name, engine.toString(), expected, engine.collect(classFile));
+
+				// The collectors are reused for all classes
+				ids.clear();
+				collectors
+					.computeIfAbsent(engine + " " + depth,
+						key -> engine.newCollector(symbols, ids, depth))
+					.collect(classFile, 0, classFile.length);
+				Set<String> interned = new TreeSet<>();
+				ids.forEach(id -> interned.add(symbols.getName(id)));
+				check(name, engine + " " + depth + " with symbol table", expected, interned);
+			}
+		}
+	}
+
+	private static void check(String name, String engine, Set<String> expected,
+			Set<String> actual)
+	{
+		if (!expected.equals(actual))
+		{
+			Set<String> missing = new TreeSet<>(expected);
+			missing.removeAll(actual);
+			Set<String> extra = new TreeSet<>(actual);
+			extra.removeAll(expected);
+			failures.add(name + " " + engine + ": missing " + missing + ", extra " + extra);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+
+/**
+ * Checks that the {@link IncrementalState} only reuses the verdict of an artifact when the
+ * configuration is the same and the jar did not change, and that verdicts of artifacts that were
+ * not checked are only kept when retained.
+ */
+public class IncrementalStateTest
+{
+	private static final String HASH = "hash";
+
+	private static final Set<String> BANNED = Set.of("org.example.Banned", "org.example.Other");
+
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("incremental");
+		try
+		{
+			Path stateFile = directory.resolve("target/ban-class-usage.state");
+			Artifact lib = artifact(directory, "lib", 1);
+			Artifact clean = artifact(directory, "clean", 2);
+			Artifact other = artifact(directory, "other", 3);
+			setLastModified(lib, 1_000_000);
+
+			IncrementalState state = IncrementalState.load(stateFile, HASH);
+			check(state.getVerdict(lib) == null, "Found a verdict without a state file");
+			state.putVerdict(lib, BANNED);
+			state.putVerdict(clean, Set.of());
+			state.putVerdict(other, Set.of());
+			state.save();
+
+			state = IncrementalState.load(stateFile, HASH);
+			check(BANNED.equals(state.getVerdict(lib)), "Did not reuse the verdict of a jar");
+			check(Set.of().equals(state.getVerdict(clean)), "Did not reuse an empty verdict");
+			check(state.getReused() == 2, "Counted " + state.getReused() + " reused verdicts");
+			check(IncrementalState.load(stateFile, "other").getVerdict(lib) == null,
+				"Reused a verdict of another configuration");
+
+			// Touched without changes, the digest is still the same
+			setLastModified(lib, 2_000_000);
+			state = IncrementalState.load(stateFile, HASH);
+			check(BANNED.equals(state.getVerdict(lib)),
+				"Did not reuse the verdict of a touched jar");
+
+			Files.write(lib.getFile().toPath(), bytes(4));
+			setLastModified(lib, 3_000_000);
+			state = IncrementalState.load(stateFile, HASH);
+			check(state.getVerdict(lib) == null, "Reused the verdict of a changed jar");
+			Files.write(lib.getFile().toPath(), new byte[] {1, 2});
+			check(state.getVerdict(lib) == null, "Reused the verdict of a jar with another size");
+
+			// Only the retained verdict of an artifact that was not checked is kept
+			state.putVerdict(lib, Set.of());
+			state.retainVerdict(clean);
+			state.save();
+			state = IncrementalState.load(stateFile, HASH);
+			check(Set.of().equals(state.getVerdict(lib)), "Did not store the new verdict");
+			check(Set.of().equals(state.getVerdict(clean)), "Did not keep a retained verdict");
+			check(state.getVerdict(other) == null, "Kept a verdict that was not retained");
+
+			Artifact classes = artifact("classes", directory.toFile());
+			state.putVerdict(classes, BANNED);
+			state.save();
+			check(IncrementalState.load(stateFile, HASH).getVerdict(classes) == null,
+				"Stored the verdict of a directory");
+			System.out.println("Checked the incremental state");
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static byte[] bytes(int seed)
+	{
+		return new byte[] {(byte) seed, 2, 3, 4};
+	}
+
+	private static void setLastModified(Artifact artifact, long millis) throws IOException
+	{
+		Files.setLastModifiedTime(artifact.getFile().toPath(), FileTime.fromMillis(millis));
+	}
+
+	private static Artifact artifact(Path directory, String artifactId, int seed)
+			throws IOException
+	{
+		Path jar = Files.write(directory.resolve(artifactId + ".jar"), bytes(seed));
+		return artifact(artifactId, jar.toFile());
+	}
+
+	private static Artifact artifact(String artifactId, File file)
+	{
+		Artifact artifact = new DefaultArtifact("org.example", artifactId, "1.0",
+			Artifact.SCOPE_COMPILE, "jar", null, new DefaultArtifactHandler("jar"));
+		artifact.setFile(file);
+		return artifact;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}
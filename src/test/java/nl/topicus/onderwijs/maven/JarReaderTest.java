@@ -0,0 +1,240 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that {@link JarReader} reads the same entries as written to archives with stored and
+ * deflated entries, an archive comment, nested archives, more than 65535 entries with a zip64
+ * record, and more than 65535 entries without one, with and without a launch script before the
+ * archive. It also checks that a closed archive can be deleted, which fails on Windows while the
+ * file is still mapped.
+ */
+public class JarReaderTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		Path directory = Files.createTempDirectory("jar-reader");
+		try
+		{
+			Map<String, byte[]> entries = new LinkedHashMap<>();
+			entries.put("a/A.class", bytes(100));
+			entries.put("a/B.class", bytes(70_000));
+			entries.put("empty.txt", new byte[0]);
+			byte[] nested = zip(entries, false, null);
+
+			Map<String, byte[]> outer = new LinkedHashMap<>(entries);
+			outer.put("BOOT-INF/lib/stored.jar", nested);
+			outer.put("WEB-INF/lib/deflated.jar", nested);
+			Path jar = directory.resolve("outer.jar");
+			byte[] outerZip = zip(outer, true, "a comment with PK\u0005\u0006 in it, which is not "
+				+ "the end of the central directory");
+			Files.write(jar, outerZip);
+			checkWithNested(jar, outer, entries);
+			Path executable = directory.resolve("executable.jar");
+			Files.write(executable, withLaunchScript(outerZip));
+			checkWithNested(executable, outer, entries);
+
+			Map<String, byte[]> many = new LinkedHashMap<>();
+			for (int index = 0; index < 70_000; index++)
+			{
+				many.put("p/C" + index + ".class", bytes(index % 50));
+			}
+			Path zip64 = directory.resolve("zip64.jar");
+			Files.write(zip64, zip(many, false, null));
+			try (JarReader reader = new JarReader(zip64.toFile()))
+			{
+				check(reader, many);
+			}
+			Path executableZip64 = directory.resolve("executable-zip64.jar");
+			Files.write(executableZip64, withLaunchScript(Files.readAllBytes(zip64)));
+			try (JarReader reader = new JarReader(executableZip64.toFile()))
+			{
+				check(reader, many);
+			}
+			Path truncatedCount = directory.resolve("truncated.jar");
+			Files.write(truncatedCount, zipWithoutZip64(many));
+			try (JarReader reader = new JarReader(truncatedCount.toFile()))
+			{
+				check(reader, many);
+			}
+
+			Files.delete(jar);
+			Files.delete(executable);
+			Files.delete(zip64);
+			Files.delete(executableZip64);
+			Files.delete(truncatedCount);
+			System.out.println("Read all entries");
+		}
+		finally
+		{
+			try (Stream<Path> files = Files.walk(directory))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static void checkWithNested(Path jar, Map<String, byte[]> expected,
+			Map<String, byte[]> nested) throws IOException
+	{
+		try (JarReader reader = new JarReader(jar.toFile()))
+		{
+			check(reader, expected);
+			reader.forEachEntry(entry -> {
+				if (entry.nameEndsWith(".jar"))
+				{
+					try (JarReader nestedReader = entry.openArchive())
+					{
+						check(nestedReader, nested);
+					}
+				}
+			});
+		}
+	}
+
+	private static void check(JarReader reader, Map<String, byte[]> expected) throws IOException
+	{
+		Map<String, byte[]> actual = new LinkedHashMap<>();
+		reader.forEachEntry(entry -> {
+			byte[] contents = Arrays.copyOf(entry.read(), (int) entry.getSize());
+			if (actual.put(entry.getName(), contents) != null)
+				throw new AssertionError(
+					"Duplicate " + entry.getName() + " in " + reader.getPath());
+			if (entry.isClass() != entry.getName().endsWith(".class"))
+				throw new AssertionError("isClass() is wrong for " + entry.getName());
+		});
+		if (!actual.keySet().equals(expected.keySet()))
+			throw new AssertionError(reader.getPath() + " has " + actual.size() + " entries, "
+				+ expected.size() + " expected");
+		for (Map.Entry<String, byte[]> entry : expected.entrySet())
+		{
+			if (!Arrays.equals(entry.getValue(), actual.get(entry.getKey())))
+				throw new AssertionError("Wrong contents for " + entry.getKey() + " in "
+					+ reader.getPath());
+		}
+	}
+
+	private static byte[] bytes(int size)
+	{
+		byte[] ret = new byte[size];
+		for (int index = 0; index < size; index++)
+		{
+			ret[index] = (byte) (index * 31 + size);
+		}
+		return ret;
+	}
+
+	/**
+	 * Prepends a launch script, as in an executable Spring Boot jar. The offsets in the archive do
+	 * not include the script.
+	 */
+	private static byte[] withLaunchScript(byte[] zip) throws IOException
+	{
+		ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		ret.write(("#!/bin/bash\nexec java -jar \"$0\" \"$@\"\n" + "#".repeat(1000) + "\n")
+			.getBytes(StandardCharsets.UTF_8));
+		ret.write(zip);
+		return ret.toByteArray();
+	}
+
+	/**
+	 * Writes the entries with {@link ZipOutputStream}, which adds a zip64 record for more than
+	 * 65535 entries. Archives ending in <code>.jar</code> are stored when requested.
+	 */
+	private static byte[] zip(Map<String, byte[]> entries, boolean storeArchives, String comment)
+			throws IOException
+	{
+		ByteArrayOutputStream ret = new ByteArrayOutputStream();
+		try (ZipOutputStream out = new ZipOutputStream(ret))
+		{
+			for (Map.Entry<String, byte[]> entry : entries.entrySet())
+			{
+				ZipEntry zipEntry = new ZipEntry(entry.getKey());
+				if (storeArchives && entry.getKey().startsWith("BOOT-INF/"))
+				{
+					CRC32 crc = new CRC32();
+					crc.update(entry.getValue());
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(entry.getValue().length);
+					zipEntry.setCrc(crc.getValue());
+				}
+				out.putNextEntry(zipEntry);
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+			if (comment != null)
+				out.setComment(comment);
+		}
+		return ret.toByteArray();
+	}
+
+	/**
+	 * Writes the entries stored, with only the lower 16 bits of the number of entries in the end
+	 * of central directory record and no zip64 record, as some tools do.
+	 */
+	private static byte[] zipWithoutZip64(Map<String, byte[]> entries) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream directory = new ByteArrayOutputStream();
+		for (Map.Entry<String, byte[]> entry : entries.entrySet())
+		{
+			byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			byte[] data = entry.getValue();
+			CRC32 crc = new CRC32();
+			crc.update(data);
+			int offset = out.size();
+			write(out, header(0x04034b50, 30, name.length, crc.getValue(), data.length));
+			out.write(name);
+			out.write(data);
+			ByteBuffer central = header(0x02014b50, 46, name.length, crc.getValue(), data.length);
+			central.putInt(42, offset);
+			write(directory, central);
+			directory.write(name);
+		}
+		int directoryOffset = out.size();
+		directory.writeTo(out);
+		ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+		end.putInt(0, 0x06054b50);
+		end.putShort(8, (short) entries.size());
+		end.putShort(10, (short) entries.size());
+		end.putInt(12, directory.size());
+		end.putInt(16, directoryOffset);
+		write(out, end);
+		return out.toByteArray();
+	}
+
+	private static ByteBuffer header(int signature, int length, int nameLength, long crc,
+			int size)
+	{
+		// The fields after the signature are 2 bytes further in a central header
+		int shift = signature == 0x02014b50 ? 2 : 0;
+		ByteBuffer ret = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		ret.putInt(0, signature);
+		ret.putInt(14 + shift, (int) crc);
+		ret.putInt(18 + shift, size);
+		ret.putInt(22 + shift, size);
+		ret.putShort(26 + shift, (short) nameLength);
+		return ret;
+	}
+
+	private static void write(OutputStream out, ByteBuffer buffer) throws IOException
+	{
+		out.write(buffer.array());
+	}
+}
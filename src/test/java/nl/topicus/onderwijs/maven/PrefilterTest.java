@@ -0,0 +1,101 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks that the {@link ClassBytesPrefilter} never skips a class that references a banned class,
+ * for every class in the given jars, or in the jars on the class path when no jars are given.
+ * The banned classes are picked from the classes that are actually referenced, as exact names and
+ * as wildcards on prefixes of them, so every round has classes that must not be skipped.
+ */
+public class PrefilterTest
+{
+	private static final int ROUNDS = 100;
+
+	public static void main(String[] args) throws Exception
+	{
+		List<String> jars = new ArrayList<>(List.of(args));
+		if (jars.isEmpty())
+		{
+			for (String entry : System.getProperty("java.class.path").split(File.pathSeparator))
+			{
+				if (entry.endsWith(".jar"))
+					jars.add(entry);
+			}
+		}
+		List<byte[]> classFiles = new ArrayList<>();
+		List<Set<String>> references = new ArrayList<>();
+		for (String jar : jars)
+		{
+			read(new File(jar), classFiles, references);
+		}
+		if (classFiles.isEmpty())
+			throw new AssertionError("No classes found in " + jars);
+
+		Random random = new Random(42);
+		long checked = 0;
+		long skipped = 0;
+		for (int round = 0; round < ROUNDS; round++)
+		{
+			List<String> bannedClasses = new ArrayList<>();
+			for (int banned = random.nextInt(5); banned >= 0; banned--)
+			{
+				bannedClasses.add(pick(random, references));
+			}
+			ClassNameMatcher matcher = new ClassNameMatcher(bannedClasses);
+			ClassBytesPrefilter prefilter = new ClassBytesPrefilter(bannedClasses);
+			for (int index = 0; index < classFiles.size(); index++)
+			{
+				byte[] classFile = classFiles.get(index);
+				if (prefilter.mayReferenceBanned(classFile, 0, classFile.length))
+					continue;
+				skipped++;
+				for (String reference : references.get(index))
+				{
+					if (matcher.matches(reference))
+						throw new AssertionError("Skipped a class that references " + reference
+							+ ", banned classes " + bannedClasses);
+				}
+			}
+			checked += classFiles.size();
+		}
+		System.out.println("Checked " + checked + " classes, skipped " + skipped);
+	}
+
+	private static void read(File jar, List<byte[]> classFiles, List<Set<String>> references)
+			throws IOException
+	{
+		try (JarReader reader = new JarReader(jar))
+		{
+			reader.forEachEntry(entry -> {
+				if (!entry.isClass() || entry.isDirectory())
+					return;
+				byte[] classFile = new byte[(int) entry.getSize()];
+				System.arraycopy(entry.read(), 0, classFile, 0, classFile.length);
+				Set<String> referenced = ScanEngine.ASM.collect(classFile);
+				if (referenced.isEmpty())
+					return;
+				classFiles.add(classFile);
+				references.add(referenced);
+			});
+		}
+	}
+
+	/**
+	 * Returns a referenced class as a binary name, or a prefix of it followed by a wildcard.
+	 */
+	private static String pick(Random random, List<Set<String>> references)
+	{
+		Set<String> referenced = references.get(random.nextInt(references.size()));
+		String name = new ArrayList<>(referenced).get(random.nextInt(referenced.size()))
+			.replace('/', '.');
+		if (random.nextBoolean())
+			return name;
+		return name.substring(0, 1 + random.nextInt(name.length())) + "*";
+	}
+}
@@ -0,0 +1,116 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Checks that the {@link RepositoryIndex} of a repository with the given jars, or the jars on the
+ * class path when no jars are given, finds the same classes as scanning the jars, after creating
+ * the index and after updating it for added, changed and removed jars.
+ */
+public class RepositoryIndexTest
+{
+	private static final List<String> QUERY = List.of("java.util.concurrent.*", "java.lang.Object",
+		"javax.*", "org.objectweb.asm.ClassVisitor");
+
+	private static final ConsoleLog log = new ConsoleLog(false);
+
+	public static void main(String[] args) throws Exception
+	{
+		List<File> jars = new ArrayList<>();
+		for (String jar : args.length > 0 ? args
+			: System.getProperty("java.class.path").split(File.pathSeparator))
+		{
+			if (jar.endsWith(".jar"))
+				jars.add(new File(jar));
+		}
+		if (jars.size() < 3)
+			throw new AssertionError("At least 3 jars are needed, found " + jars);
+
+		Path repository = Files.createTempDirectory("repository");
+		Path indexFile = repository.resolveSibling(repository.getFileName() + ".index");
+		try
+		{
+			for (int jar = 0; jar < jars.size() - 1; jar++)
+			{
+				copy(jars.get(jar), repository, jar);
+			}
+			check(repository, indexFile);
+
+			// Add a jar, change a jar and remove a jar
+			copy(jars.get(jars.size() - 1), repository, jars.size() - 1);
+			Path changed = repository.resolve("g/1/jar-1.jar");
+			Files.copy(jars.get(0).toPath(), changed, StandardCopyOption.REPLACE_EXISTING);
+			changed.toFile().setLastModified(changed.toFile().lastModified() + 2000);
+			Files.delete(repository.resolve("g/2/jar-2.jar"));
+			check(repository, indexFile);
+			System.out.println("Indexed " + jars.size() + " jars");
+		}
+		finally
+		{
+			Files.deleteIfExists(indexFile);
+			try (Stream<Path> files = Files.walk(repository))
+			{
+				files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+	private static void copy(File jar, Path repository, int number) throws IOException
+	{
+		Path target = repository.resolve("g/" + number + "/jar-" + number + ".jar");
+		Files.createDirectories(target.getParent());
+		Files.copy(jar.toPath(), target);
+	}
+
+	private static void check(Path repository, Path indexFile) throws IOException
+	{
+		ClassNameMatcher matcher = new ClassNameMatcher(QUERY);
+		Map<String, Set<String>> expected = new TreeMap<>();
+		List<Path> jars = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(repository))
+		{
+			files.filter(file -> file.toString().endsWith(".jar")).forEach(jars::add);
+		}
+		for (Path jar : jars)
+		{
+			Set<String> banned = new TreeSet<>();
+			for (String className : new ArchiveScanner(ScanEngine.ASM, ScanDepth.FULL, null, null,
+				"", new HashMap<>(), log).scan(jar.toFile()))
+			{
+				if (matcher.matches(className))
+					banned.add(className);
+			}
+			if (!banned.isEmpty())
+				expected.put(repository.relativize(jar).toString().replace(File.separatorChar, '/'),
+					banned);
+		}
+
+		try (RepositoryIndex index =
+			RepositoryIndex.update(repository, indexFile, ScanEngine.CONSTANT_POOL, log))
+		{
+			Map<String, Set<String>> actual = new TreeMap<>();
+			index.findReferences(QUERY)
+				.forEach((jar, classNames) -> actual.put(index.getJarPath(jar), classNames));
+			if (!expected.equals(actual))
+				throw new AssertionError("Expected " + expected + " but found " + actual);
+			for (Path jar : jars)
+			{
+				if (index.getJar(jar.toFile()) < 0)
+					throw new AssertionError(jar + " is not indexed");
+			}
+		}
+	}
+}
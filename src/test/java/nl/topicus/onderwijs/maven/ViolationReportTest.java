@@ -0,0 +1,108 @@
+package nl.topicus.onderwijs.maven;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the summary of a {@link ViolationReport} does not depend on the order in which the
+ * banned classes are added, that it is trimmed to the requested number of lines, and that the
+ * reports contain every banned class.
+ */
+public class ViolationReportTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		List<String[]> violations = new ArrayList<>();
+		for (int artifact = 0; artifact < 20; artifact++)
+		{
+			for (int index = 0; index < 500; index++)
+			{
+				violations.add(new String[] {"g:a" + artifact + ":1",
+					"com.example.p" + index % 30 + ".Banned" + index});
+			}
+		}
+		violations.add(new String[] {"g:single:1", "Unpackaged"});
+
+		Path directory = Files.createTempDirectory("violation-report");
+		try
+		{
+			String expected = null;
+			for (long seed = 0; seed < 3; seed++)
+			{
+				Collections.shuffle(violations, new Random(seed));
+				Path json = directory.resolve("violations.json");
+				Path sarif = directory.resolve("violations.sarif");
+				ViolationReport report = new ViolationReport(json, sarif, "g:project:1");
+				for (String[] violation : violations)
+				{
+					report.add(violation[0], new File("a.jar"), violation[1],
+						seed == 0 ? null : List.of("com.example.Root", violation[1]));
+				}
+				report.close();
+
+				String summary = report.getSummary(50).replace(" (reached from com.example.Root"
+					+ " -> com.example.p0.Banned0)", "");
+				if (expected == null)
+					expected = summary;
+				else if (!expected.equals(summary))
+					throw new AssertionError("The summary depends on the order:\n" + expected
+						+ "\n" + summary);
+				check(report.getViolations() == violations.size(), "Counted "
+					+ report.getViolations() + " violations");
+				check(summary.contains("com.example.p0.* (17 classes)"), summary);
+				check(summary.contains("... and "), summary);
+				check(summary.split("\n    ").length - 1 == 50, summary);
+
+				String jsonReport = Files.readString(json, StandardCharsets.UTF_8);
+				String sarifReport = Files.readString(sarif, StandardCharsets.UTF_8);
+				check(jsonReport.contains("\"total\": " + violations.size()), "JSON report");
+				check(count(jsonReport, "\"class\": ") == violations.size(), "JSON report");
+				check(count(sarifReport, "\"ruleId\": ") == violations.size(), "SARIF report");
+				check(!Files.exists(directory.resolve("violations.json.tmp")), "Temporary file");
+			}
+
+			// Without banned classes the reports of the previous run are removed
+			ViolationReport empty = new ViolationReport(directory.resolve("violations.json"),
+				directory.resolve("violations.sarif"), "g:project:1");
+			empty.close();
+			check(directory.toFile().list().length == 0, "Reports without banned classes");
+
+			ViolationReport summaryOnly = new ViolationReport(null, null, "g:project:1");
+			summaryOnly.add("g:a:1", null, "com.example.Banned", null);
+			summaryOnly.close();
+			check(summaryOnly.getSummary(10).contains("com.example.Banned"), "Summary only");
+			check(directory.toFile().list().length == 0, "Reports that are not requested");
+			System.out.println("Checked the violation reports");
+		}
+		finally
+		{
+			for (File file : directory.toFile().listFiles())
+			{
+				Files.delete(file.toPath());
+			}
+			Files.delete(directory);
+		}
+	}
+
+	private static int count(String text, String part)
+	{
+		int ret = 0;
+		for (int index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1))
+		{
+			ret++;
+		}
+		return ret;
+	}
+
+	private static void check(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+}